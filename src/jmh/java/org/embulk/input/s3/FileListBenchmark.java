@@ -0,0 +1,198 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of FileList with synthetic keys.
+ *
+ * Run with {@code ./gradlew jmh}. Pass JMH options with {@code -PjmhArgs="..."}, for example
+ * {@code -PjmhArgs="FileListBenchmark.build -p keyCount=50000000"} to measure 50M keys.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FileListBenchmark
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+
+    @State(Scope.Benchmark)
+    public static class Keys
+    {
+        @Param({"1000", "100000", "1000000"})
+        public int keyCount;
+
+        // 0 makes one task per file
+        @Param({"0", "104857600"})
+        public long minTaskSize;
+
+        public String[] keys;
+
+        @Setup(Level.Trial)
+        public void generateKeys()
+        {
+            keys = new String[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = key(i);
+            }
+        }
+
+        FileList.Builder newBuilder()
+        {
+            return new FileList.Builder().pathMatchPattern(".*").minTaskSize(minTaskSize);
+        }
+
+        FileList.Builder addAll(FileList.Builder builder)
+        {
+            for (int i = 0; i < keys.length; i++) {
+                builder.add(keys[i], size(i));
+            }
+            return builder;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FilledBuilder
+    {
+        public FileList.Builder builder;
+
+        @Setup(Level.Invocation)
+        public void fill(final Keys keys)
+        {
+            builder = keys.addAll(keys.newBuilder());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Built
+    {
+        public FileList fileList;
+        public byte[] json;
+
+        @Setup(Level.Trial)
+        public void build(final Keys keys) throws IOException
+        {
+            fileList = keys.addAll(keys.newBuilder()).build();
+            json = MAPPER.writeValueAsBytes(fileList);
+            System.out.printf("%n%,d keys in %,d tasks: %,d bytes serialized%n", keys.keyCount, fileList.getTaskCount(), json.length);
+        }
+    }
+
+    @Benchmark
+    public FileList.Builder add(final Keys keys)
+    {
+        return keys.addAll(keys.newBuilder());
+    }
+
+    // adds keys into 4 partitions in parallel, and then merges them
+    @Benchmark
+    public FileList addInPartitions(final Keys keys) throws InterruptedException
+    {
+        final FileList.Builder builder = keys.newBuilder();
+        final int partitionCount = 4;
+        final Thread[] threads = new Thread[partitionCount];
+        for (int p = 0; p < partitionCount; p++) {
+            final FileList.Builder.Partition partition = builder.newPartition();
+            final int from = (int) ((long) keys.keyCount * p / partitionCount);
+            final int to = (int) ((long) keys.keyCount * (p + 1) / partitionCount);
+            threads[p] = new Thread(() -> {
+                for (int i = from; i < to; i++) {
+                    partition.add(keys.keys[i], size(i));
+                }
+                partition.finish();
+            });
+            threads[p].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return builder.build();
+    }
+
+    // includes getSplits
+    @Benchmark
+    public FileList build(final FilledBuilder filled)
+    {
+        return filled.builder.build();
+    }
+
+    @Benchmark
+    public byte[] serialize(final Built built) throws IOException
+    {
+        return MAPPER.writeValueAsBytes(built.fileList);
+    }
+
+    @Benchmark
+    public FileList deserialize(final Built built) throws IOException
+    {
+        return MAPPER.readValue(built.json, FileList.class);
+    }
+
+    @Benchmark
+    public void iterate(final Built built, final Blackhole blackhole)
+    {
+        for (int task = 0; task < built.fileList.getTaskCount(); task++) {
+            for (final String path : built.fileList.get(task)) {
+                blackhole.consume(path);
+            }
+        }
+    }
+
+    // reads files of a task backward so that every read seeks backward
+    @Benchmark
+    public void iterateWithRewinds(final Built built, final Blackhole blackhole)
+    {
+        for (int task = 0; task < built.fileList.getTaskCount(); task++) {
+            final List<String> paths = built.fileList.get(task);
+            for (int i = paths.size() - 1; i >= 0; i--) {
+                blackhole.consume(paths.get(i));
+            }
+        }
+    }
+
+    // keys shaped like partitioned logs, with shared prefixes
+    static String key(final int i)
+    {
+        return String.format("logs/dt=2019-%02d-%02d/hour=%02d/part-%08d.csv.gz", i / 100000 % 12 + 1, i / 10000 % 28 + 1, i / 1000 % 24, i);
+    }
+
+    static long size(final int i)
+    {
+        return 1024L * 1024L + (i % 1000) * 1024L;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of path_match_pattern matched by KeyMatcher and by the regex.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyMatcherBenchmark
+{
+    private static final int KEY_COUNT = 100000;
+
+    @Param({"\\.csv$", "/data1/|/data2/", "/2019/|/2020/|/2021/|/2022/|/2023/|/2024/"})
+    public String pattern;
+
+    private String[] keys;
+    private Pattern regex;
+    private KeyMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = FileListBenchmark.key(i);
+        }
+        regex = Pattern.compile(pattern);
+        matcher = KeyMatcher.compile(pattern);
+    }
+
+    @Benchmark
+    public int regex()
+    {
+        int matched = 0;
+        for (final String key : keys) {
+            if (regex.matcher(key).find()) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int keyMatcher()
+    {
+        int matched = 0;
+        for (final String key : keys) {
+            if (matcher.matches(key)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import com.amazonaws.AmazonServiceException;
+import org.apache.http.NoHttpResponseException;
+import org.embulk.util.retryhelper.RetryExecutor;
+import org.embulk.util.retryhelper.RetryGiveupException;
+import org.embulk.util.retryhelper.Retryable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries with exponential backoff and full jitter, so that tasks failed at once don't retry in lockstep.
+ *
+ * Transient socket errors are retried after a short interval. Throttling errors such as 503 SlowDown slow down
+ * all requests in the JVM for a while, and retries of all tasks in the JVM are limited by a shared token bucket.
+ *
+ * RetryExecutor can't be extended, so a policy is registered for a RetryExecutor built by the plugin, and
+ * {@link DefaultRetryable} runs with the policy instead of the executor if it is registered.
+ */
+final class AdaptiveRetryPolicy
+{
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRetryPolicy.class);
+
+    private static final Map<RetryExecutor, AdaptiveRetryPolicy> POLICIES = new WeakHashMap<>();
+    private static final Map<Double, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+    private static final Throttle THROTTLE = new Throttle();
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "SlowDown", "Throttling", "ThrottlingException", "RequestLimitExceeded", "TooManyRequestsException"));
+
+    private final int retryLimit;
+    private final int quickRetryWaitMillis;
+    private final int initialRetryWaitMillis;
+    private final int maxRetryWaitMillis;
+    private final RetryBudget budget;
+    private final Throttle throttle;
+
+    AdaptiveRetryPolicy(final int retryLimit, final int quickRetryWaitMillis, final int initialRetryWaitMillis, final int maxRetryWaitMillis,
+            final double retryBudgetPerSecond)
+    {
+        this(retryLimit, quickRetryWaitMillis, initialRetryWaitMillis, maxRetryWaitMillis,
+                BUDGETS.computeIfAbsent(retryBudgetPerSecond, RetryBudget::new), THROTTLE);
+    }
+
+    AdaptiveRetryPolicy(final int retryLimit, final int quickRetryWaitMillis, final int initialRetryWaitMillis, final int maxRetryWaitMillis,
+            final RetryBudget budget, final Throttle throttle)
+    {
+        this.retryLimit = retryLimit;
+        this.quickRetryWaitMillis = quickRetryWaitMillis;
+        this.initialRetryWaitMillis = initialRetryWaitMillis;
+        this.maxRetryWaitMillis = maxRetryWaitMillis;
+        this.budget = budget;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Makes {@link DefaultRetryable} run with this policy when it is executed with the executor.
+     */
+    void register(final RetryExecutor executor)
+    {
+        synchronized (POLICIES) {
+            POLICIES.put(executor, this);
+        }
+    }
+
+    // returns null if no policy is registered for the executor
+    static AdaptiveRetryPolicy of(final RetryExecutor executor)
+    {
+        synchronized (POLICIES) {
+            return POLICIES.get(executor);
+        }
+    }
+
+    /**
+     * Runs the retryable in the same way as {@link RetryExecutor#runInterruptible(Retryable)} except for the waits.
+     */
+    <T> T run(final Retryable<T> retryable) throws InterruptedException, RetryGiveupException
+    {
+        int retryCount = 0;
+        Exception firstException = null;
+        while (true) {
+            throttle.await();
+            try {
+                final T result = retryable.call();
+                throttle.onSuccess();
+                return result;
+            }
+            catch (final InterruptedException ex) {
+                throw ex;
+            }
+            catch (final Exception ex) {
+                if (firstException == null) {
+                    firstException = ex;
+                }
+                if (!retryable.isRetryableException(ex) || retryCount >= retryLimit) {
+                    retryable.onGiveup(firstException, ex);
+                    throw new RetryGiveupException(ex);
+                }
+                retryCount++;
+                final boolean throttled = isThrottling(ex);
+                if (throttled) {
+                    throttle.onThrottled();
+                }
+                final long budgetWaitMillis = TimeUnit.NANOSECONDS.toMillis(budget.reserve());
+                final int retryWait = (int) Math.max(budgetWaitMillis, retryWaitMillis(retryCount, !throttled && isTransientSocketError(ex)));
+                retryable.onRetry(ex, retryCount, retryLimit, retryWait);
+                Thread.sleep(retryWait);
+            }
+        }
+    }
+
+    // a random wait up to the exponential backoff
+    long retryWaitMillis(final int retryCount, final boolean quick)
+    {
+        final long base = quick ? quickRetryWaitMillis : initialRetryWaitMillis;
+        final long backoff = Math.min(maxRetryWaitMillis, base << Math.min(retryCount - 1, 30));
+        return ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    static boolean isThrottling(final Exception exception)
+    {
+        if (exception instanceof AmazonServiceException) {
+            final AmazonServiceException ase = (AmazonServiceException) exception;
+            return ase.getStatusCode() == 503 || ase.getStatusCode() == 429 || THROTTLING_ERROR_CODES.contains(ase.getErrorCode());
+        }
+        return false;
+    }
+
+    static boolean isTransientSocketError(final Exception exception)
+    {
+        if (exception instanceof AmazonServiceException) {
+            return false;
+        }
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketException || cause instanceof SocketTimeoutException || cause instanceof NoHttpResponseException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tokens for retries shared in the JVM. A retry without a token waits until one is refilled.
+     */
+    static class RetryBudget
+    {
+        // the bucket holds tokens for this many seconds
+        private static final double BURST_SECONDS = 10;
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        RetryBudget(final double tokensPerSecond)
+        {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, tokensPerSecond * BURST_SECONDS);
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        /**
+         * Takes a token, and returns nanoseconds to wait until it is available.
+         */
+        synchronized long reserve()
+        {
+            final long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            tokens--;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+
+    /**
+     * A pause before every request in the JVM, increased by throttling errors and decreased by successes.
+     */
+    static class Throttle
+    {
+        static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+        static final long MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+        private long delayNanos = 0;
+        private long increasedAt;
+
+        synchronized long getDelayNanos()
+        {
+            return delayNanos;
+        }
+
+        synchronized void onThrottled()
+        {
+            final long now = System.nanoTime();
+            // throttling errors of requests sent before the last increase don't increase it again
+            if (delayNanos > 0 && now - increasedAt < delayNanos) {
+                return;
+            }
+            delayNanos = Math.min(MAX_DELAY_NANOS, Math.max(MIN_DELAY_NANOS, delayNanos * 2));
+            increasedAt = now;
+            log.warn("Requests are throttled. Pausing {} ms before each request.", TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        }
+
+        synchronized void onSuccess()
+        {
+            if (delayNanos > 0) {
+                delayNanos = delayNanos * 9 / 10;
+                if (delayNanos < MIN_DELAY_NANOS) {
+                    delayNanos = 0;
+                    log.info("Requests are not throttled any longer.");
+                }
+            }
+        }
+
+        void await() throws InterruptedException
+        {
+            final long delay = getDelayNanos();
+            if (delay > 0) {
+                // half of the delay is random so that requests are spread
+                TimeUnit.NANOSECONDS.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Packs files into tasks of even costs by the longest-processing-time-first algorithm.
+ *
+ * Files are assigned from the most costly one to the task with the least cost so far. The number of tasks is
+ * {@code max_task_count}, reduced so that a task costs {@code min_task_size} on average, and never more than
+ * the number of files.
+ */
+class BinPackingTaskSplitter
+        implements TaskSplitter
+{
+    private static final Comparator<FileList.Entry> ORDER_OF_INDEX =
+            Comparator.comparingInt(FileList.Entry::getIndex).thenComparingLong(FileList.Entry::getRangeStart);
+
+    private final long minTaskSize;
+    private final long costPerFile;
+    private final int maxTaskCount;
+
+    BinPackingTaskSplitter(long minTaskSize, long costPerFile, int maxTaskCount)
+    {
+        this.minTaskSize = minTaskSize;
+        this.costPerFile = costPerFile;
+        this.maxTaskCount = maxTaskCount;
+    }
+
+    @Override
+    public PackedEntries split(List<FileList.Entry> entries)
+    {
+        if (entries.isEmpty()) {
+            return new PackedEntries.Builder().build();
+        }
+
+        long totalCost = 0;
+        for (FileList.Entry entry : entries) {
+            totalCost += cost(entry);
+        }
+        long taskCount = Math.min(maxTaskCount, entries.size());
+        if (minTaskSize > 0) {
+            taskCount = Math.min(taskCount, Math.max(1, totalCost / minTaskSize));
+        }
+
+        List<FileList.Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(this::cost).reversed().thenComparing(ORDER_OF_INDEX));
+
+        PriorityQueue<Bin> bins = new PriorityQueue<>((int) taskCount,
+                Comparator.comparingLong((Bin bin) -> bin.cost).thenComparingInt(bin -> bin.id));
+        for (int i = 0; i < taskCount; i++) {
+            bins.add(new Bin(i));
+        }
+        for (FileList.Entry entry : sorted) {
+            Bin bin = bins.poll();
+            bin.entries.add(entry);
+            bin.cost += cost(entry);
+            bins.add(bin);
+        }
+
+        List<List<FileList.Entry>> tasks = new ArrayList<>(bins.size());
+        for (Bin bin : bins) {
+            bin.entries.sort(ORDER_OF_INDEX);
+            tasks.add(bin.entries);
+        }
+        // keeps tasks in the order of files as much as possible
+        tasks.sort(Comparator.comparing(task -> task.get(0), ORDER_OF_INDEX));
+        return PackedEntries.of(tasks);
+    }
+
+    // at least 1 so that empty files are spread over tasks, and no task is left empty
+    private long cost(FileList.Entry entry)
+    {
+        return Math.max(1, entry.getLength() + costPerFile);
+    }
+
+    private static class Bin
+    {
+        private final int id;
+        private final List<FileList.Entry> entries = new ArrayList<>();
+        private long cost;
+
+        Bin(int id)
+        {
+            this.id = id;
+        }
+    }
+}
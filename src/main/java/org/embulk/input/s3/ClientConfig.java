@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+import java.util.Optional;
+
+/**
+ * ClientConfig is config unit to tune the HTTP client of AmazonS3. Unset values keep the defaults of the plugin.
+ */
+public interface ClientConfig
+    extends Task
+{
+    @Config("max_connections")
+    @ConfigDefault("null")
+    Optional<Integer> getMaxConnections();
+
+    @Config("connection_timeout_millis")
+    @ConfigDefault("null")
+    Optional<Integer> getConnectionTimeoutMillis();
+
+    @Config("socket_timeout_millis")
+    @ConfigDefault("null")
+    Optional<Integer> getSocketTimeoutMillis();
+
+    @Config("connection_ttl_millis")
+    @ConfigDefault("null")
+    Optional<Long> getConnectionTtlMillis();
+
+    @Config("connection_max_idle_millis")
+    @ConfigDefault("null")
+    Optional<Long> getConnectionMaxIdleMillis();
+
+    @Config("tcp_keep_alive")
+    @ConfigDefault("null")
+    Optional<Boolean> getTcpKeepAlive();
+
+    @Config("socket_send_buffer_size_hint")
+    @ConfigDefault("null")
+    Optional<Integer> getSocketSendBufferSizeHint();
+
+    @Config("socket_receive_buffer_size_hint")
+    @ConfigDefault("null")
+    Optional<Integer> getSocketReceiveBufferSizeHint();
+
+    @Config("use_expect_continue")
+    @ConfigDefault("null")
+    Optional<Boolean> getUseExpectContinue();
+
+    @Config("use_gzip")
+    @ConfigDefault("null")
+    Optional<Boolean> getUseGzip();
+}
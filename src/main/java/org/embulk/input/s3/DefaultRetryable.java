@@ -101,8 +101,8 @@ public class DefaultRetryable<T> implements Retryable<T>
     @Override
     public void onRetry(Exception exception, int retryCount, int retryLimit, int retryWait)
     {
-        String message = format("%s failed. Retrying %d/%d after %d seconds. Message: %s",
-                operationName, retryCount, retryLimit, retryWait / 1000, exception.getMessage());
+        String message = format("%s failed. Retrying %d/%d after %.1f seconds. Message: %s",
+                operationName, retryCount, retryLimit, retryWait / 1000.0, exception.getMessage());
         if (retryCount % retryLimit == 0) {
             log.warn(message, exception);
         }
@@ -145,7 +145,7 @@ public class DefaultRetryable<T> implements Retryable<T>
         }
 
         try {
-            return executor.runInterruptible(this);
+            return runWith(executor);
         }
         catch (RetryGiveupException e) {
             final Exception cause = e.getCause();
@@ -186,7 +186,7 @@ public class DefaultRetryable<T> implements Retryable<T>
         }
 
         try {
-            return executor.runInterruptible(this);
+            return runWith(executor);
         }
         catch (RetryGiveupException e) {
             final Exception cause = e.getCause();
@@ -204,4 +204,14 @@ public class DefaultRetryable<T> implements Retryable<T>
             throw new RuntimeException(e);
         }
     }
+
+    // runs with the adaptive policy instead if it is registered for the executor
+    private T runWith(RetryExecutor executor) throws InterruptedException, RetryGiveupException
+    {
+        final AdaptiveRetryPolicy policy = AdaptiveRetryPolicy.of(executor);
+        if (policy != null) {
+            return policy.run(this);
+        }
+        return executor.runInterruptible(this);
+    }
 }
@@ -18,33 +18,57 @@ package org.embulk.input.s3;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Pattern;
+import java.util.function.BiConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 // this class should be moved to embulk-core
 public class FileList
 {
+    private static final Logger log = LoggerFactory.getLogger(FileList.class);
+
+    // Paths are compressed in blocks of this number of entries so that a block can be decompressed independently.
+    static final int ENTRIES_PER_BLOCK = 1024;
+
     public interface Task
     {
         @Config("path_match_pattern")
@@ -55,24 +79,67 @@ public class FileList
         @ConfigDefault("2147483647")
         int getTotalFileCountLimit();
 
-        // TODO support more algorithms to combine tasks
         @Config("min_task_size")
         @ConfigDefault("0")
         long getMinTaskSize();
+
+        @Config("task_split_strategy")
+        @ConfigDefault("\"sequential\"")
+        String getTaskSplitStrategy();
+
+        @Config("cost_per_file")
+        @ConfigDefault("0")
+        long getCostPerFile();
+
+        @Config("max_task_count")
+        @ConfigDefault("null")
+        Optional<Integer> getMaxTaskCount();
+
+        @Config("max_task_size")
+        @ConfigDefault("0")
+        long getMaxTaskSize();
+
+        @Config("file_list_spill")
+        @ConfigDefault("false")
+        boolean getFileListSpill();
+
+        @Config("file_list_spill_directory")
+        @ConfigDefault("null")
+        Optional<String> getFileListSpillDirectory();
     }
 
     public static class Entry
     {
         private int index;
         private long size;
+        private long rangeStart;
+        private long rangeEnd;
+
+        public Entry(int index, long size)
+        {
+            this(index, size, -1L, -1L);
+        }
+
+        /**
+         * An entry with a range reads only bytes in [rangeStart, rangeEnd) of the file, aligned to lines.
+         */
+        public Entry(int index, long size, long rangeStart, long rangeEnd)
+        {
+            this.index = index;
+            this.size = size;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
+        }
 
         @JsonCreator
+        @Deprecated
         public Entry(
                 @JsonProperty("index") int index,
-                @JsonProperty("size") long size)
+                @JsonProperty("size") long size,
+                @JsonProperty("range_start") Long rangeStart,
+                @JsonProperty("range_end") Long rangeEnd)
         {
-            this.index = index;
-            this.size = size;
+            this(index, size, rangeStart != null ? rangeStart : -1L, rangeEnd != null ? rangeEnd : -1L);
         }
 
         @JsonProperty("index")
@@ -81,51 +148,283 @@ public class FileList
             return index;
         }
 
+        // size of the whole file even if this entry has a range
         @JsonProperty("size")
         public long getSize()
         {
             return size;
         }
+
+        @JsonIgnore
+        public boolean hasRange()
+        {
+            return rangeStart >= 0;
+        }
+
+        @JsonIgnore
+        public long getRangeStart()
+        {
+            return rangeStart;
+        }
+
+        @JsonIgnore
+        public long getRangeEnd()
+        {
+            return rangeEnd;
+        }
+
+        @JsonIgnore
+        long getLength()
+        {
+            return hasRange() ? rangeEnd - rangeStart : size;
+        }
+
+        @JsonProperty("range_start")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @Deprecated
+        public Long getRangeStartIfPresent()
+        {
+            return hasRange() ? rangeStart : null;
+        }
+
+        @JsonProperty("range_end")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @Deprecated
+        public Long getRangeEndIfPresent()
+        {
+            return hasRange() ? rangeEnd : null;
+        }
+    }
+
+    /**
+     * Describes a local file which FileList is spilled to.
+     *
+     * The file consists of the compressed path blocks, the offsets of the blocks, the indexes of the first paths
+     * of the blocks, the positions of the first entry
+     * of each task, and then the entries (a 4-byte index, an 8-byte size and an 8-byte range start and end).
+     * Only this descriptor is serialized
+     * in the task source, and each task reads only its own entries from the memory-mapped file.
+     */
+    public static class SpillFile
+    {
+        private static final int ENTRY_BYTES = 4 + 8 + 8 + 8;
+
+        private final String path;
+        private final long blockTableOffset;
+        private final int blockCount;
+        private final long taskTableOffset;
+        private final int taskCount;
+        private final long entriesOffset;
+
+        @JsonCreator
+        public SpillFile(
+                @JsonProperty("path") String path,
+                @JsonProperty("block_table_offset") long blockTableOffset,
+                @JsonProperty("block_count") int blockCount,
+                @JsonProperty("task_table_offset") long taskTableOffset,
+                @JsonProperty("task_count") int taskCount,
+                @JsonProperty("entries_offset") long entriesOffset)
+        {
+            this.path = path;
+            this.blockTableOffset = blockTableOffset;
+            this.blockCount = blockCount;
+            this.taskTableOffset = taskTableOffset;
+            this.taskCount = taskCount;
+            this.entriesOffset = entriesOffset;
+        }
+
+        @JsonProperty("path")
+        public String getPath()
+        {
+            return path;
+        }
+
+        @JsonProperty("block_table_offset")
+        public long getBlockTableOffset()
+        {
+            return blockTableOffset;
+        }
+
+        @JsonProperty("block_count")
+        public int getBlockCount()
+        {
+            return blockCount;
+        }
+
+        @JsonProperty("task_table_offset")
+        public long getTaskTableOffset()
+        {
+            return taskTableOffset;
+        }
+
+        @JsonProperty("task_count")
+        public int getTaskCount()
+        {
+            return taskCount;
+        }
+
+        @JsonProperty("entries_offset")
+        public long getEntriesOffset()
+        {
+            return entriesOffset;
+        }
+
+        /**
+         * Maps a block of paths. Blocks are mapped one by one since the whole paths can be larger than a buffer.
+         */
+        ByteBuffer mapPathBlock(long start, long end)
+        {
+            return map(start, end - start);
+        }
+
+        long[] readBlockOffsets()
+        {
+            final ByteBuffer table = map(blockTableOffset, 8L * blockCount);
+            final long[] offsets = new long[blockCount];
+            table.asLongBuffer().get(offsets);
+            return offsets;
+        }
+
+        int[] readBlockFirstIndexes()
+        {
+            final ByteBuffer table = map(blockTableOffset + 8L * blockCount, 4L * blockCount);
+            final int[] indexes = new int[blockCount];
+            table.asIntBuffer().get(indexes);
+            return indexes;
+        }
+
+        List<Entry> readTask(int i)
+        {
+            final ByteBuffer table = map(taskTableOffset + 8L * i, 8L * 2);
+            final long first = table.getLong(0);
+            final long end = table.getLong(8);
+            final ByteBuffer buffer = map(entriesOffset + ENTRY_BYTES * first, ENTRY_BYTES * (end - first));
+            final List<Entry> entries = new ArrayList<>((int) (end - first));
+            while (buffer.hasRemaining()) {
+                entries.add(new Entry(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getLong()));
+            }
+            return entries;
+        }
+
+        void delete()
+        {
+            try {
+                Files.deleteIfExists(Paths.get(path));
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private MappedByteBuffer map(long position, long size)
+        {
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        static SpillFile write(Path file, OutputStream out, long dataSize, List<Long> blockOffsets, List<Integer> blockFirstIndexes,
+                PackedEntries tasks)
+                throws IOException
+        {
+            final DataOutputStream data = new DataOutputStream(out);
+            for (long offset : blockOffsets) {
+                data.writeLong(offset);
+            }
+            for (int index : blockFirstIndexes) {
+                data.writeInt(index);
+            }
+            for (int i = 0; i <= tasks.getTaskCount(); i++) {
+                data.writeLong(tasks.getTaskOffset(i));
+            }
+            for (int i = 0; i < tasks.getEntryCount(); i++) {
+                final Entry entry = tasks.getEntry(i);
+                data.writeInt(entry.getIndex());
+                data.writeLong(entry.getSize());
+                data.writeLong(entry.getRangeStart());
+                data.writeLong(entry.getRangeEnd());
+            }
+            data.close();
+
+            final long blockTableOffset = dataSize;
+            final long taskTableOffset = blockTableOffset + (8L + 4L) * blockOffsets.size();
+            final long entriesOffset = taskTableOffset + 8L * (tasks.getTaskCount() + 1);
+            return new SpillFile(file.toString(), blockTableOffset, blockOffsets.size(), taskTableOffset, tasks.getTaskCount(), entriesOffset);
+        }
     }
 
     public static class Builder
     {
+        // It holds all the blocks, or only the current block if spilled.
         private final ByteArrayOutputStream binary;
-        private final OutputStream stream;
-        private final List<Entry> entries = new ArrayList<>();
+        private long spilledSize = 0;
+        private Path spillDirectory = null;
+        private Path spillPath = null;
+        private OutputStream spillStream = null;
+        private final Deflater deflater;
+        private DeflaterOutputStream blockStream;
+        private OutputStream stream;
+        private final List<Long> blockOffsets = new ArrayList<>();
+        private final List<Integer> blockFirstIndexes = new ArrayList<>();
+        // partitions not merged yet, in the order of creation
+        private final Deque<Partition> partitions = new ArrayDeque<>();
+        // sizes of files in the order of indexes
+        private long[] sizes = new long[1024];
+        private int count = 0;
         private String last = null;
 
         private int limitCount = Integer.MAX_VALUE;
         private long minTaskSize = 1;
-        private Pattern pathMatchPattern;
+        private long maxTaskSize = 0;
+        private String taskSplitStrategy = "sequential";
+        private long costPerFile = 0;
+        private int maxTaskCount = defaultMaxTaskCount();
+        private KeyMatcher pathMatcher;
+        // keys tested with path_match_pattern, and rejected by it
+        private long testedCount = 0;
+        private long rejectedCount = 0;
+        private BiConsumer<String, Long> listener = null;
 
-        private final ByteBuffer castBuffer = ByteBuffer.allocate(4);
+        // path of the previous entry in the current block, to encode only the suffix of the next path
+        private byte[] previousPath = new byte[0];
 
         public Builder(Task task)
         {
             this();
-            this.pathMatchPattern = Pattern.compile(task.getPathMatchPattern());
+            pathMatchPattern(task.getPathMatchPattern());
             this.limitCount = task.getTotalFileCountLimit();
             this.minTaskSize = task.getMinTaskSize();
+            this.maxTaskSize = task.getMaxTaskSize();
+            this.costPerFile = task.getCostPerFile();
+            maxTaskCount(task.getMaxTaskCount().orElse(defaultMaxTaskCount()));
+            taskSplitStrategy(task.getTaskSplitStrategy());
+            if (task.getFileListSpill()) {
+                this.spillDirectory = Paths.get(task.getFileListSpillDirectory().orElse(System.getProperty("java.io.tmpdir")));
+            }
         }
 
         public Builder(ConfigSource config)
         {
             this();
-            this.pathMatchPattern = Pattern.compile(config.get(String.class, "path_match_pattern", ".*"));
+            pathMatchPattern(config.get(String.class, "path_match_pattern", ".*"));
             this.limitCount = config.get(int.class, "total_file_count_limit", Integer.MAX_VALUE);
             this.minTaskSize = config.get(long.class, "min_task_size", 0L);
+            this.maxTaskSize = config.get(long.class, "max_task_size", 0L);
+            this.costPerFile = config.get(long.class, "cost_per_file", 0L);
+            maxTaskCount(config.get(int.class, "max_task_count", defaultMaxTaskCount()));
+            taskSplitStrategy(config.get(String.class, "task_split_strategy", "sequential"));
+            if (config.get(boolean.class, "file_list_spill", false)) {
+                this.spillDirectory = Paths.get(config.get(String.class, "file_list_spill_directory", System.getProperty("java.io.tmpdir")));
+            }
         }
 
         public Builder()
         {
             binary = new ByteArrayOutputStream();
-            try {
-                stream = new BufferedOutputStream(new GZIPOutputStream(binary));
-            }
-            catch (IOException ex) {
-                throw new RuntimeException(ex);
-            }
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
         }
 
         public Builder limitTotalFileCount(int limitCount)
@@ -140,15 +439,71 @@ public class FileList
             return this;
         }
 
+        public Builder maxTaskSize(long bytes)
+        {
+            this.maxTaskSize = bytes;
+            return this;
+        }
+
+        public Builder taskSplitStrategy(String strategy)
+        {
+            if (!"sequential".equals(strategy) && !"bin_packing".equals(strategy)) {
+                throw new ConfigException("task_split_strategy must be either \"sequential\" or \"bin_packing\": " + strategy);
+            }
+            this.taskSplitStrategy = strategy;
+            return this;
+        }
+
+        public Builder costPerFile(long bytes)
+        {
+            this.costPerFile = bytes;
+            return this;
+        }
+
+        public Builder maxTaskCount(int count)
+        {
+            if (count < 1) {
+                throw new ConfigException("max_task_count must be 1 or larger");
+            }
+            this.maxTaskCount = count;
+            return this;
+        }
+
+        // the local executor runs tasks with threads twice as many as processors by default
+        private static int defaultMaxTaskCount()
+        {
+            return Runtime.getRuntime().availableProcessors() * 2;
+        }
+
         public Builder pathMatchPattern(String pattern)
         {
-            this.pathMatchPattern = Pattern.compile(pattern);
+            this.pathMatcher = KeyMatcher.compile(pattern);
             return this;
         }
 
-        public int size()
+        public Builder spillTo(Path directory)
         {
-            return entries.size();
+            this.spillDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets a listener called with each file used by this builder or its partitions, on the thread which adds it.
+         */
+        public Builder onAdd(BiConsumer<String, Long> listener)
+        {
+            this.listener = listener;
+            return this;
+        }
+
+        // the number of files including files in partitions which are not merged yet
+        public synchronized int size()
+        {
+            long size = count;
+            for (Partition partition : partitions) {
+                size += partition.count;
+            }
+            return (int) Math.min(size, Integer.MAX_VALUE);
         }
 
         public boolean needsMore()
@@ -161,77 +516,475 @@ public class FileList
         {
             // TODO throw IllegalStateException if stream is already closed
 
+            if (!partitions.isEmpty()) {
+                throw new IllegalStateException("Files can't be added while partitions are not merged yet");
+            }
             if (!needsMore()) {
                 return false;
             }
 
-            if (!pathMatchPattern.matcher(path).find()) {
+            testedCount++;
+            if (!pathMatcher.matches(path)) {
+                rejectedCount++;
                 return false;
             }
 
-            int index = entries.size();
-            entries.add(new Entry(index, size));
+            int index = count;
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+            sizes[count++] = size;
 
             byte[] data = path.getBytes(StandardCharsets.UTF_8);
-            castBuffer.putInt(0, data.length);
             try {
-                stream.write(castBuffer.array());
-                stream.write(data);
+                // a block is finished by merging a partition, and then the next block starts at any index
+                if (stream == null || index - blockFirstIndexes.get(blockFirstIndexes.size() - 1) == ENTRIES_PER_BLOCK) {
+                    startBlock(index);
+                }
+                int shared = sharedPrefixLength(previousPath, data);
+                writeVarint(stream, shared);
+                writeVarint(stream, data.length - shared);
+                stream.write(data, shared, data.length - shared);
+                previousPath = data;
             }
             catch (IOException ex) {
                 throw new RuntimeException(ex);
             }
 
             last = path;
+            if (listener != null) {
+                listener.accept(path, size);
+            }
             return true;
         }
 
+        /**
+         * Creates a partition which another thread can add files to concurrently with other partitions.
+         *
+         * Files of partitions are merged in the order in which the partitions were created, after files added by
+         * {@link #add(String, long)} before. A partition is merged as soon as it and all partitions created before it
+         * are finished, or when {@link #build()} is called. total_file_count_limit is applied then.
+         * {@link #add(String, long)} throws IllegalStateException until all partitions are merged, so that files
+         * are kept in the order of listing.
+         */
+        public synchronized Partition newPartition()
+        {
+            final Partition partition = new Partition();
+            partitions.add(partition);
+            return partition;
+        }
+
         public FileList build()
         {
             try {
-                stream.close();
+                mergePartitions();
+                finishBlock();
             }
             catch (IOException ex) {
                 throw new RuntimeException(ex);
             }
-            return new FileList(binary.toByteArray(), getSplits(entries), Optional.ofNullable(last));
+            deflater.end();
+            if (rejectedCount > 0) {
+                log.info("path_match_pattern rejected {} of {} keys ({}%), matched by {}",
+                        rejectedCount, testedCount, String.format("%.1f", 100.0 * rejectedCount / testedCount), pathMatcher);
+            }
+            if (spillDirectory != null) {
+                return buildSpilled();
+            }
+            final long[] offsets = blockOffsets.stream().mapToLong(Long::longValue).toArray();
+            final int[] firstIndexes = blockFirstIndexes.stream().mapToInt(Integer::intValue).toArray();
+            return new FileList(binary.toByteArray(), getSplits(), Optional.ofNullable(last), offsets, firstIndexes, ENTRIES_PER_BLOCK, null);
         }
 
-        private List<List<Entry>> getSplits(List<Entry> all)
+        private FileList buildSpilled()
         {
-            List<List<Entry>> tasks = new ArrayList<>();
-            long currentTaskSize = 0;
-            List<Entry> currentTask = new ArrayList<>();
-            for (Entry entry : all) {
-                currentTask.add(entry);
-                currentTaskSize += entry.getSize();  // TODO consider to multiply the size by cost_per_byte, and add cost_per_file
-                if (currentTaskSize >= minTaskSize) {
-                    tasks.add(currentTask);
-                    currentTask = new ArrayList<>();
-                    currentTaskSize = 0;
+            try {
+                final OutputStream out = openSpillStream();
+                final SpillFile spill = SpillFile.write(spillPath, out, spilledSize, blockOffsets, blockFirstIndexes, getSplits());
+                return new FileList(null, null, Optional.ofNullable(last), null, null, ENTRIES_PER_BLOCK, spill);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private OutputStream openSpillStream() throws IOException
+        {
+            if (spillStream == null) {
+                Files.createDirectories(spillDirectory);
+                spillPath = Files.createTempFile(spillDirectory, "embulk-input-s3-files-", ".bin");
+                spillStream = new BufferedOutputStream(new FileOutputStream(spillPath.toFile()));
+            }
+            return spillStream;
+        }
+
+        private void startBlock(int firstIndex) throws IOException
+        {
+            finishBlock();
+            previousPath = new byte[0];
+            blockOffsets.add(spilledSize + binary.size());
+            blockFirstIndexes.add(firstIndex);
+            blockStream = new DeflaterOutputStream(binary, deflater);
+            stream = new BufferedOutputStream(blockStream);
+        }
+
+        private static int sharedPrefixLength(byte[] a, byte[] b)
+        {
+            int max = Math.min(a.length, b.length);
+            int i = 0;
+            while (i < max && a[i] == b[i]) {
+                i++;
+            }
+            return i;
+        }
+
+        private static void writeVarint(OutputStream out, int value) throws IOException
+        {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private void finishBlock() throws IOException
+        {
+            if (stream != null) {
+                // DeflaterOutputStream#finish doesn't close the underlying stream
+                stream.flush();
+                blockStream.finish();
+                deflater.reset();
+                blockStream = null;
+                stream = null;
+                flushToSpill();
+            }
+        }
+
+        private void flushToSpill() throws IOException
+        {
+            if (spillDirectory != null) {
+                // keep only the current block in memory
+                binary.writeTo(openSpillStream());
+                spilledSize += binary.size();
+                binary.reset();
+            }
+        }
+
+        // appends compressed blocks of partitions as they are. Blocks of a partition start at the next index.
+        private synchronized void mergePartitions() throws IOException
+        {
+            try {
+                while (!partitions.isEmpty()) {
+                    mergePartition(partitions.removeFirst());
+                }
+            }
+            finally {
+                for (Partition partition : partitions) {
+                    partition.releaseDeflater();
+                }
+                partitions.clear();
+            }
+        }
+
+        private synchronized void mergeFinishedPartitions() throws IOException
+        {
+            while (!partitions.isEmpty() && partitions.peekFirst().finished) {
+                mergePartition(partitions.removeFirst());
+            }
+        }
+
+        private void mergePartition(Partition partition) throws IOException
+        {
+            partition.finishLastBlock();
+            testedCount += partition.testedCount;
+            rejectedCount += partition.rejectedCount;
+            final int count = Math.min(partition.count, limitCount - this.count);
+            if (count <= 0) {
+                return;
+            }
+            finishBlock();
+            final byte[] blocks = partition.binary.toByteArray();
+            for (int block = 0; block * ENTRIES_PER_BLOCK < count; block++) {
+                final int offset = partition.blockOffsets.get(block);
+                final int end = block + 1 < partition.blockOffsets.size() ? partition.blockOffsets.get(block + 1) : blocks.length;
+                blockOffsets.add(spilledSize + binary.size());
+                blockFirstIndexes.add(this.count + block * ENTRIES_PER_BLOCK);
+                binary.write(blocks, offset, end - offset);
+                flushToSpill();
+            }
+            if (this.count + count > sizes.length) {
+                sizes = Arrays.copyOf(sizes, Math.max(sizes.length * 2, this.count + count));
+            }
+            System.arraycopy(partition.sizes, 0, sizes, this.count, count);
+            this.count += count;
+            last = count == partition.count ? partition.last : partition.readPath(blocks, count - 1);
+        }
+
+        /**
+         * Files listed by a thread. A partition is not thread-safe, but partitions are independent of each other.
+         *
+         * The deflater and sizes are allocated by the first file, so that partitions created ahead of listing hold
+         * no memory. The deflater is ended when the partition is finished.
+         */
+        public class Partition
+        {
+            private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            private final List<Integer> blockOffsets = new ArrayList<>();
+            private Deflater deflater;
+            private DeflaterOutputStream blockStream;
+            private OutputStream stream;
+            private byte[] previousPath = new byte[0];
+            private long[] sizes;
+            private int count = 0;
+            private String last = null;
+            private long testedCount = 0;
+            private long rejectedCount = 0;
+            // written by the listing thread, and read by the thread which merges partitions
+            private volatile boolean finished = false;
+
+            private Partition()
+            {
+            }
+
+            public int size()
+            {
+                return count;
+            }
+
+            public boolean needsMore()
+            {
+                return count < limitCount;
+            }
+
+            // returns true if this file is used
+            public boolean add(String path, long size)
+            {
+                if (finished) {
+                    throw new IllegalStateException("Files can't be added to a finished partition");
+                }
+                if (!needsMore()) {
+                    return false;
+                }
+
+                testedCount++;
+                if (!pathMatcher.matches(path)) {
+                    rejectedCount++;
+                    return false;
+                }
+
+                if (sizes == null) {
+                    sizes = new long[1024];
+                    deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                }
+                else if (count == sizes.length) {
+                    sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                }
+                byte[] data = path.getBytes(StandardCharsets.UTF_8);
+                try {
+                    if (count % ENTRIES_PER_BLOCK == 0) {
+                        finishBlock();
+                        previousPath = new byte[0];
+                        blockOffsets.add(binary.size());
+                        blockStream = new DeflaterOutputStream(binary, deflater);
+                        stream = new BufferedOutputStream(blockStream);
+                    }
+                    int shared = sharedPrefixLength(previousPath, data);
+                    writeVarint(stream, shared);
+                    writeVarint(stream, data.length - shared);
+                    stream.write(data, shared, data.length - shared);
+                    previousPath = data;
+                }
+                catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                sizes[count++] = size;
+
+                last = path;
+                if (listener != null) {
+                    listener.accept(path, size);
+                }
+                return true;
+            }
+
+            /**
+             * Finishes adding files to this partition, and merges it into the builder if all partitions created
+             * before it are merged.
+             */
+            public void finish()
+            {
+                try {
+                    finishLastBlock();
+                    mergeFinishedPartitions();
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            private void finishBlock() throws IOException
+            {
+                if (stream != null) {
+                    stream.flush();
+                    blockStream.finish();
+                    deflater.reset();
+                    blockStream = null;
+                    stream = null;
+                }
+            }
+
+            // finishes the last block, and releases the native memory of the deflater. It does nothing if already finished.
+            private void finishLastBlock() throws IOException
+            {
+                if (finished) {
+                    return;
+                }
+                try {
+                    finishBlock();
+                }
+                finally {
+                    releaseDeflater();
+                    finished = true;
+                }
+            }
+
+            private void releaseDeflater()
+            {
+                if (deflater != null) {
+                    deflater.end();
+                    deflater = null;
+                }
+            }
+
+            private String readPath(byte[] blocks, int index) throws IOException
+            {
+                final int block = index / ENTRIES_PER_BLOCK;
+                final Inflater inflater = new Inflater(true);
+                try {
+                    final InputStream in = new InflaterInputStream(
+                            new ByteArrayInputStream(blocks, blockOffsets.get(block), blocks.length - blockOffsets.get(block)), inflater);
+                    final PathReader reader = new PathReader(new DataInputStream(new BufferedInputStream(in)), false);
+                    for (int i = block * ENTRIES_PER_BLOCK; i < index; i++) {
+                        reader.readNext();
+                    }
+                    return reader.readNextString();
+                }
+                finally {
+                    inflater.end();
+                }
+            }
+        }
+
+        private PackedEntries getSplits()
+        {
+            final TaskSplitter splitter = "bin_packing".equals(taskSplitStrategy)
+                    ? new BinPackingTaskSplitter(minTaskSize, costPerFile, maxTaskCount)
+                    : new SequentialTaskSplitter(minTaskSize, costPerFile);
+            // a view of files which creates an Entry only when it's got
+            final List<Entry> all = new AbstractList<Entry>() {
+                @Override
+                public Entry get(int i)
+                {
+                    return new Entry(i, sizes[i]);
                 }
+
+                @Override
+                public int size()
+                {
+                    return count;
+                }
+            };
+            return splitter.split(splitLargeEntries(all));
+        }
+
+        private List<Entry> splitLargeEntries(List<Entry> all)
+        {
+            if (maxTaskSize <= 0) {
+                return all;
             }
-            if (!currentTask.isEmpty()) {
-                tasks.add(currentTask);
+            List<Entry> split = new ArrayList<>(all.size());
+            for (Entry entry : all) {
+                if (entry.getSize() <= maxTaskSize) {
+                    split.add(entry);
+                    continue;
+                }
+                for (long start = 0; start < entry.getSize(); start += maxTaskSize) {
+                    split.add(new Entry(entry.getIndex(), entry.getSize(), start, Math.min(start + maxTaskSize, entry.getSize())));
+                }
             }
-            return tasks;
+            return split;
         }
     }
 
     private final byte[] data;
-    private final List<List<Entry>> tasks;
+    private final PackedEntries entries;
     private final Optional<String> last;
+    private final long[] blockOffsets;
+    private final int[] blockFirstIndexes;
+    private final int blockSize;
+    private final SpillFile spill;
+
+    private long[] spilledBlockOffsets;
+    private int[] spilledBlockFirstIndexes;
 
+    @Deprecated
+    public FileList(
+            byte[] data,
+            List<List<Entry>> tasks,
+            Optional<String> last)
+    {
+        this(data, tasks, last, null, 0, null);
+    }
+
+    @Deprecated
+    public FileList(
+            byte[] data,
+            List<List<Entry>> tasks,
+            Optional<String> last,
+            long[] blockOffsets,
+            int blockSize,
+            SpillFile spill)
+    {
+        this(data, tasks != null ? PackedEntries.of(tasks) : null, last, blockOffsets, null, blockSize, spill);
+    }
+
+    /**
+     * If blockOffsets is null, data is a single gzip stream of all paths written by older versions.
+     * If blockFirstIndexes is null, every block has blockSize paths.
+     * If spill is not null, data, entries, blockOffsets and blockFirstIndexes are stored in the spill file instead.
+     * Entries are read from tasks, lists of JSON objects, if they are written by older versions.
+     */
     @JsonCreator
     @Deprecated
     public FileList(
             @JsonProperty("data") byte[] data,
+            @JsonProperty("entries") byte[] entries,
             @JsonProperty("tasks") List<List<Entry>> tasks,
-            @JsonProperty("last") Optional<String> last)
+            @JsonProperty("last") Optional<String> last,
+            @JsonProperty("block_offsets") long[] blockOffsets,
+            @JsonProperty("block_first_indexes") int[] blockFirstIndexes,
+            @JsonProperty("block_size") int blockSize,
+            @JsonProperty("spill") SpillFile spill)
+    {
+        this(data, entries != null ? PackedEntries.decode(entries) : (tasks != null ? PackedEntries.of(tasks) : null),
+                last, blockOffsets, blockFirstIndexes, blockSize, spill);
+    }
+
+    private FileList(
+            byte[] data,
+            PackedEntries entries,
+            Optional<String> last,
+            long[] blockOffsets,
+            int[] blockFirstIndexes,
+            int blockSize,
+            SpillFile spill)
     {
         this.data = data;
-        this.tasks = tasks;
+        this.entries = entries;
         this.last = last;
+        this.blockOffsets = blockOffsets;
+        this.blockFirstIndexes = blockFirstIndexes;
+        this.blockSize = blockSize;
+        this.spill = spill;
     }
 
     @JsonIgnore
@@ -246,13 +999,50 @@ public class FileList
     @JsonIgnore
     public int getTaskCount()
     {
-        return tasks.size();
+        if (spill != null) {
+            return spill.getTaskCount();
+        }
+        return entries.getTaskCount();
+    }
+
+    /**
+     * Returns entries of the task in the same order with {@link #get(int)}.
+     */
+    @JsonIgnore
+    public List<Entry> getEntries(int i)
+    {
+        if (spill != null) {
+            return spill.readTask(i);
+        }
+        return entries.getTask(i);
     }
 
     @JsonIgnore
     public List<String> get(int i)
     {
-        return new EntryList(data, tasks.get(i));
+        if (spill != null) {
+            readSpilledBlockTable();
+            return new EntryList(null, spilledBlockOffsets, spilledBlockFirstIndexes, spill.readTask(i));
+        }
+        return new EntryList(data != null ? ByteBuffer.wrap(data) : null, blockOffsets, blockFirstIndexes, entries.getTask(i));
+    }
+
+    /**
+     * Deletes the spill file if this list is spilled. It must be called after all tasks finished.
+     */
+    public void deleteSpillFile()
+    {
+        if (spill != null) {
+            spill.delete();
+        }
+    }
+
+    private synchronized void readSpilledBlockTable()
+    {
+        if (spilledBlockOffsets == null) {
+            spilledBlockOffsets = spill.readBlockOffsets();
+            spilledBlockFirstIndexes = spill.readBlockFirstIndexes();
+        }
     }
 
     @JsonProperty("data")
@@ -262,10 +1052,25 @@ public class FileList
         return data;
     }
 
-    @JsonProperty("tasks")
+    @JsonProperty("entries")
+    @Deprecated
+    public byte[] getEncodedEntries()
+    {
+        return entries != null ? entries.encode() : null;
+    }
+
+    // tasks are serialized as entries
+    @JsonIgnore
     @Deprecated
     public List<List<Entry>> getTasks()
     {
+        if (entries == null) {
+            return null;
+        }
+        final List<List<Entry>> tasks = new ArrayList<>(entries.getTaskCount());
+        for (int i = 0; i < entries.getTaskCount(); i++) {
+            tasks.add(entries.getTask(i));
+        }
         return tasks;
     }
 
@@ -276,26 +1081,55 @@ public class FileList
         return last;
     }
 
+    @JsonProperty("block_offsets")
+    @Deprecated
+    public long[] getBlockOffsets()
+    {
+        return blockOffsets;
+    }
+
+    @JsonProperty("block_first_indexes")
+    @Deprecated
+    public int[] getBlockFirstIndexes()
+    {
+        return blockFirstIndexes;
+    }
+
+    @JsonProperty("block_size")
+    @Deprecated
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    @JsonProperty("spill")
+    @Deprecated
+    public SpillFile getSpill()
+    {
+        return spill;
+    }
+
     private class EntryList
             extends AbstractList<String>
     {
-        private final byte[] data;
+        private final ByteBuffer data;
+        private final long[] blockOffsets;
+        private final int[] blockFirstIndexes;
         private final List<Entry> entries;
-        private InputStream stream;
+        // the inflater of the current block. It's ended when the block is closed, to release its native memory.
+        private Inflater inflater;
+        private PathReader reader;
+        private int currentBlock;
         private int current;
 
-        private final ByteBuffer castBuffer = ByteBuffer.allocate(4);
-
-        public EntryList(byte[] data, List<Entry> entries)
+        public EntryList(ByteBuffer data, long[] blockOffsets, int[] blockFirstIndexes, List<Entry> entries)
         {
             this.data = data;
+            this.blockOffsets = blockOffsets;
+            this.blockFirstIndexes = blockFirstIndexes;
             this.entries = entries;
-            try {
-                this.stream = new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
-            }
-            catch (IOException ex) {
-                throw new RuntimeException(ex);
-            }
+            this.reader = null;
+            this.currentBlock = -1;
             this.current = 0;
         }
 
@@ -303,23 +1137,29 @@ public class FileList
         public synchronized String get(int i)
         {
             Entry e = entries.get(i);
-            if (e.getIndex() < current) {
-                // rewind to the head
-                try {
-                    stream.close();
-                    stream = new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
+            int block = blockOf(e.getIndex());
+            if (reader == null || block != currentBlock || e.getIndex() < current) {
+                // seek to the head of the block
+                openBlock(block);
+            }
+
+            try {
+                while (current < e.getIndex()) {
+                    reader.readNext();
+                    current++;
                 }
-                catch (IOException ex) {
-                    throw new RuntimeException(ex);
+                // now current == e.getIndex()
+                current++;
+                final String path = reader.readNextString();
+                if (i == entries.size() - 1) {
+                    // the last path of the task is usually read at last
+                    closeBlock();
                 }
-                current = 0;
+                return path;
             }
-
-            while (current < e.getIndex()) {
-                readNext();
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
             }
-            // now current == e.getIndex()
-            return readNextString();
         }
 
         @Override
@@ -328,26 +1168,185 @@ public class FileList
             return entries.size();
         }
 
-        private byte[] readNext()
+        private int blockOf(int index)
         {
-            try {
-                stream.read(castBuffer.array());
-                int n = castBuffer.getInt(0);
-                byte[] b = new byte[n];  // here should be able to use a pooled buffer because read data is ignored if readNextString doesn't call this method
-                stream.read(b);
+            if (blockOffsets == null) {
+                return 0;
+            }
+            if (blockFirstIndexes == null) {
+                return index / blockSize;
+            }
+            int found = Arrays.binarySearch(blockFirstIndexes, index);
+            return found >= 0 ? found : -found - 2;
+        }
 
-                current++;
+        private int firstIndexOf(int block)
+        {
+            if (blockOffsets == null) {
+                return 0;
+            }
+            if (blockFirstIndexes == null) {
+                return block * blockSize;
+            }
+            return blockFirstIndexes[block];
+        }
 
-                return b;
+        private void openBlock(int block)
+        {
+            try {
+                closeBlock();
+                if (blockOffsets == null) {
+                    reader = new PathReader(new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteBufferInputStream(data.duplicate())))), true);
+                }
+                else {
+                    ByteBuffer slice = blockData(block);
+                    inflater = new Inflater(true);
+                    reader = new PathReader(new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteBufferInputStream(slice), inflater))), false);
+                }
             }
             catch (IOException ex) {
                 throw new RuntimeException(ex);
             }
+            currentBlock = block;
+            current = firstIndexOf(block);
+        }
+
+        // offsets of spilled blocks can be beyond the range of int
+        private ByteBuffer blockData(int block)
+        {
+            if (spill != null) {
+                long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : spill.getBlockTableOffset();
+                return spill.mapPathBlock(blockOffsets[block], end);
+            }
+            ByteBuffer slice = data.duplicate();
+            slice.position((int) blockOffsets[block]);
+            slice.limit(block + 1 < blockOffsets.length ? (int) blockOffsets[block + 1] : data.limit());
+            return slice;
         }
 
-        private String readNextString()
+        private void closeBlock() throws IOException
+        {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            finally {
+                reader = null;
+                if (inflater != null) {
+                    inflater.end();
+                    inflater = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads paths of a block from its head.
+     */
+    private static class PathReader
+    {
+        private final DataInputStream stream;
+        private final boolean legacy;
+        // the last read path, which the next path shares its prefix with
+        private byte[] path = new byte[256];
+        private int pathLength;
+
+        PathReader(DataInputStream stream, boolean legacy)
+        {
+            this.stream = stream;
+            this.legacy = legacy;
+        }
+
+        String readNextString() throws IOException
+        {
+            readNext();
+            return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+        }
+
+        // blocks have the length of the prefix shared with the previous path, and the suffix. The legacy format has whole paths.
+        void readNext() throws IOException
+        {
+            int shared = 0;
+            int suffix;
+            if (legacy) {
+                suffix = stream.readInt();
+            }
+            else {
+                shared = readVarint();
+                suffix = readVarint();
+                if (shared > pathLength) {
+                    throw new IOException("Broken file list: shared prefix is longer than the previous path");
+                }
+            }
+            if (path.length < shared + suffix) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, shared + suffix));
+            }
+            stream.readFully(path, shared, suffix);
+            pathLength = shared + suffix;
+        }
+
+        void close() throws IOException
+        {
+            stream.close();
+        }
+
+        private int readVarint() throws IOException
+        {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = stream.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Broken file list: too long varint");
+        }
+    }
+
+    private static class ByteBufferInputStream
+            extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
         {
-            return new String(readNext(), StandardCharsets.UTF_8);
+            return buffer.remaining();
         }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads until the requested length is filled or the stream ends.
+ *
+ * InputStreamFileInput reads an object into a buffer of the allocator by a single read, which returns only bytes
+ * received from the socket so far. This fills each buffer in place instead, so that half-filled buffers are not
+ * passed to decoders and parsers, and the HTTP client reads large chunks directly into the buffer.
+ */
+class FullReadInputStream
+        extends FilterInputStream
+{
+    FullReadInputStream(final InputStream in)
+    {
+        super(in);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        int total = 0;
+        while (total < len) {
+            final int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                return total == 0 ? -1 : total;
+            }
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+}
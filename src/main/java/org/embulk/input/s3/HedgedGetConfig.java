@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+/**
+ * HedgedGetConfig is config unit to send a second GET request when the first one doesn't respond in time.
+ */
+public interface HedgedGetConfig
+    extends Task
+{
+    // the delay before a hedged request is this percentile of recent latencies
+    @Config("percentile")
+    @ConfigDefault("95.0")
+    double getPercentile();
+
+    // the delay until enough latencies are observed
+    @Config("initial_delay_millis")
+    @ConfigDefault("200")
+    long getInitialDelayMillis();
+
+    // hedged requests are at most this ratio of all requests
+    @Config("max_ratio")
+    @ConfigDefault("0.05")
+    double getMaxRatio();
+}
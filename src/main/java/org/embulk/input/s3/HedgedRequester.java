@@ -0,0 +1,212 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends a second identical request if the first one doesn't respond within a delay, and uses whichever responds first.
+ *
+ * The delay is a percentile of the latencies of recent requests, so only requests in the tail are hedged.
+ * Hedged requests are limited to a ratio of all requests by a token bucket, so that hedging doesn't multiply
+ * the load when all requests are slow.
+ */
+class HedgedRequester
+{
+    private static final Logger log = LoggerFactory.getLogger(HedgedRequester.class);
+
+    // the number of recent latencies to take the percentile of
+    static final int WINDOW_SIZE = 1024;
+    // the delay is recomputed after this many latencies are recorded
+    private static final int RECOMPUTE_INTERVAL = 64;
+    // hedged requests can burst up to this many after a period without them
+    private static final double MAX_TOKENS = 10;
+
+    private final ExecutorService executor;
+    private final double percentile;
+    private final double maxRatio;
+
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private long recorded = 0;
+    private long delayNanos;
+    private double tokens = 1;
+    private long requests = 0;
+    private long hedged = 0;
+
+    HedgedRequester(final ExecutorService executor, final double percentile, final long initialDelayMillis, final double maxRatio)
+    {
+        this.executor = executor;
+        this.percentile = percentile;
+        this.maxRatio = maxRatio;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(initialDelayMillis);
+    }
+
+    /**
+     * Returns the result of the request which succeeds first. A result which is not returned is passed to
+     * {@code discarder}. If all requests fail, the exception of the first request is thrown as is.
+     */
+    <T> T call(final Callable<T> request, final Consumer<T> discarder) throws Exception
+    {
+        countRequest();
+        final Race<T> race = new Race<>(discarder);
+        race.start(request);
+        if (!race.await(getDelayNanos()) && tryHedge()) {
+            race.start(request);
+        }
+        race.await(Long.MAX_VALUE);
+        return race.getResult();
+    }
+
+    synchronized long getDelayNanos()
+    {
+        return delayNanos;
+    }
+
+    synchronized long getHedgedCount()
+    {
+        return hedged;
+    }
+
+    private synchronized boolean tryHedge()
+    {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        hedged++;
+        if (hedged % 100 == 1) {
+            log.info("Sent a hedged GET request after {} ms. {} of {} requests were hedged.",
+                    TimeUnit.NANOSECONDS.toMillis(delayNanos), hedged, requests);
+        }
+        return true;
+    }
+
+    private synchronized void countRequest()
+    {
+        requests++;
+        tokens = Math.min(MAX_TOKENS, tokens + maxRatio);
+    }
+
+    synchronized void recordLatency(final long nanos)
+    {
+        latencies[(int) (recorded % WINDOW_SIZE)] = nanos;
+        recorded++;
+        if (recorded >= RECOMPUTE_INTERVAL && recorded % RECOMPUTE_INTERVAL == 0) {
+            final long[] sorted = Arrays.copyOf(latencies, (int) Math.min(recorded, WINDOW_SIZE));
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+            delayNanos = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    /**
+     * Requests racing for a result. Each request records its own latency even if it loses.
+     */
+    private class Race<T>
+    {
+        private final Consumer<T> discarder;
+        private int running = 0;
+        private boolean done = false;
+        private T result;
+        private Exception failure;
+
+        Race(final Consumer<T> discarder)
+        {
+            this.discarder = discarder;
+        }
+
+        void start(final Callable<T> request)
+        {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                running++;
+            }
+            final long start = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    final T value = request.call();
+                    recordLatency(System.nanoTime() - start);
+                    succeed(value);
+                }
+                catch (final Exception ex) {
+                    fail(ex);
+                }
+            });
+        }
+
+        // returns true if the race is over
+        synchronized boolean await(final long nanos) throws InterruptedException
+        {
+            final long deadline = System.nanoTime() + Math.min(nanos, TimeUnit.DAYS.toNanos(1));
+            while (!done) {
+                final long rest = deadline - System.nanoTime();
+                if (rest <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, rest);
+            }
+            return true;
+        }
+
+        synchronized T getResult() throws Exception
+        {
+            if (!done) {
+                throw new IllegalStateException("The request has not finished");
+            }
+            if (result == null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        private void succeed(final T value)
+        {
+            synchronized (this) {
+                running--;
+                if (!done) {
+                    done = true;
+                    result = value;
+                    notifyAll();
+                    return;
+                }
+            }
+            discarder.accept(value);
+        }
+
+        private synchronized void fail(final Exception ex)
+        {
+            running--;
+            if (failure == null) {
+                failure = ex;
+            }
+            // the race is over if no other request can succeed
+            if (running == 0 && !done) {
+                done = true;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+import java.util.Optional;
+
+/**
+ * InventoryConfig is config unit to list files from an S3 Inventory report.
+ */
+public interface InventoryConfig
+    extends Task
+{
+    // key of manifest.json of the report
+    @Config("manifest")
+    String getManifest();
+
+    // bucket where the report is stored. The bucket of files is used by default.
+    @Config("bucket")
+    @ConfigDefault("null")
+    Optional<String> getBucket();
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tests whether a key matches path_match_pattern in the same way as {@code Pattern.compile(regex).matcher(key).find()}.
+ *
+ * A pattern which is an alternation of literals, each optionally anchored by '^' and '$', is matched by comparing
+ * strings instead of the regex. Unanchored literals are searched at once with an Aho-Corasick automaton if there are
+ * many of them. Other patterns are matched by the regex.
+ */
+abstract class KeyMatcher
+{
+    // searching substrings one by one is faster than an automaton if there are only a few of them
+    private static final int MAX_SUBSTRINGS_WITHOUT_AUTOMATON = 4;
+
+    private static final String METACHARACTERS = ".[]{}()*+?^$|\\";
+
+    static KeyMatcher compile(String regex)
+    {
+        // throws PatternSyntaxException for an invalid pattern as before
+        final Pattern pattern = Pattern.compile(regex);
+        final List<Literal> literals = parseAlternation(regex);
+        if (literals == null) {
+            return new RegexMatcher(pattern);
+        }
+        for (Literal literal : literals) {
+            if (literal.text.isEmpty() && !(literal.start && literal.end)) {
+                return new AllMatcher();
+            }
+        }
+        return new LiteralMatcher(pattern, literals);
+    }
+
+    abstract boolean matches(String key);
+
+    private static class Literal
+    {
+        private final String text;
+        private final boolean start;
+        private final boolean end;
+
+        Literal(String text, boolean start, boolean end)
+        {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // returns null if the regex is not an alternation of literals
+    private static List<Literal> parseAlternation(String regex)
+    {
+        final List<Literal> literals = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+        boolean start = false;
+        boolean end = false;
+        boolean wildcard = false;
+        int i = 0;
+        while (true) {
+            if (i == regex.length() || regex.charAt(i) == '|') {
+                if (wildcard && start && end) {
+                    // "^.*$" doesn't match keys including line terminators
+                    return null;
+                }
+                literals.add(new Literal(text.toString(), start, end));
+                if (i == regex.length()) {
+                    return literals;
+                }
+                text.setLength(0);
+                start = false;
+                end = false;
+                wildcard = false;
+                i++;
+                continue;
+            }
+            if (end) {
+                return null;
+            }
+            final char c = regex.charAt(i);
+            if (c == '^' && text.length() == 0 && !start) {
+                start = true;
+                i++;
+            }
+            else if (c == '$' && (i + 1 == regex.length() || regex.charAt(i + 1) == '|')) {
+                end = true;
+                i++;
+            }
+            else if (regex.startsWith(".*", i) && text.length() == 0 && !wildcard && isEndOfAlternative(regex, i + 2)) {
+                // ".*" matches an empty string anywhere
+                wildcard = true;
+                i += 2;
+            }
+            else if (regex.startsWith("\\Q", i)) {
+                int close = regex.indexOf("\\E", i + 2);
+                if (close < 0) {
+                    close = regex.length();
+                }
+                text.append(regex, i + 2, close);
+                i = Math.min(close + 2, regex.length());
+            }
+            else if (c == '\\') {
+                final char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped) || Character.isHighSurrogate(escaped)) {
+                    // character classes, back references and control characters
+                    return null;
+                }
+                text.append(escaped);
+                i += 2;
+            }
+            else if (METACHARACTERS.indexOf(c) >= 0) {
+                return null;
+            }
+            else {
+                text.append(c);
+                i++;
+            }
+        }
+    }
+
+    private static boolean isEndOfAlternative(String regex, int i)
+    {
+        return i == regex.length() || regex.charAt(i) == '|' || (regex.charAt(i) == '$' && isEndOfAlternative(regex, i + 1));
+    }
+
+    // '$' matches also before a line terminator at the end of input
+    private static boolean endsWithLineTerminator(String key)
+    {
+        if (key.isEmpty()) {
+            return false;
+        }
+        final char c = key.charAt(key.length() - 1);
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static class AllMatcher
+            extends KeyMatcher
+    {
+        @Override
+        boolean matches(String key)
+        {
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "all keys";
+        }
+    }
+
+    private static class RegexMatcher
+            extends KeyMatcher
+    {
+        private final Pattern pattern;
+
+        RegexMatcher(Pattern pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(String key)
+        {
+            return pattern.matcher(key).find();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "regex";
+        }
+    }
+
+    private static class LiteralMatcher
+            extends KeyMatcher
+    {
+        private final Pattern pattern;
+        private final boolean anchoredAtEnd;
+        private final Set<String> exacts = new HashSet<>();
+        private final String[] prefixes;
+        private final String[] suffixes;
+        private final String[] substrings;
+        private final AhoCorasick automaton;
+
+        LiteralMatcher(Pattern pattern, List<Literal> literals)
+        {
+            this.pattern = pattern;
+            final List<String> prefixes = new ArrayList<>();
+            final List<String> suffixes = new ArrayList<>();
+            final List<String> substrings = new ArrayList<>();
+            boolean anchoredAtEnd = false;
+            for (Literal literal : literals) {
+                anchoredAtEnd |= literal.end;
+                if (literal.start && literal.end) {
+                    exacts.add(literal.text);
+                }
+                else if (literal.start) {
+                    prefixes.add(literal.text);
+                }
+                else if (literal.end) {
+                    suffixes.add(literal.text);
+                }
+                else {
+                    substrings.add(literal.text);
+                }
+            }
+            this.anchoredAtEnd = anchoredAtEnd;
+            this.prefixes = prefixes.toArray(new String[0]);
+            this.suffixes = suffixes.toArray(new String[0]);
+            if (substrings.size() > MAX_SUBSTRINGS_WITHOUT_AUTOMATON) {
+                this.substrings = new String[0];
+                this.automaton = new AhoCorasick(substrings);
+            }
+            else {
+                this.substrings = substrings.toArray(new String[0]);
+                this.automaton = null;
+            }
+        }
+
+        @Override
+        boolean matches(String key)
+        {
+            if (anchoredAtEnd && endsWithLineTerminator(key)) {
+                return pattern.matcher(key).find();
+            }
+            if (!exacts.isEmpty() && exacts.contains(key)) {
+                return true;
+            }
+            for (String prefix : prefixes) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            for (String suffix : suffixes) {
+                if (key.endsWith(suffix)) {
+                    return true;
+                }
+            }
+            for (String substring : substrings) {
+                if (key.contains(substring)) {
+                    return true;
+                }
+            }
+            return automaton != null && automaton.find(key);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d exact, %d prefix, %d suffix and %d substring literals",
+                    exacts.size(), prefixes.length, suffixes.length, automaton != null ? automaton.size : substrings.length);
+        }
+    }
+
+    /**
+     * A deterministic automaton which finds any of the literals. Characters not in the literals share a column.
+     */
+    private static class AhoCorasick
+    {
+        private final int size;
+        private final Map<Character, Integer> alphabet = new HashMap<>();
+        private final int[] asciiAlphabet = new int[128];
+        private final int width;
+        private final int[] transitions;
+        private final boolean[] accepts;
+
+        AhoCorasick(List<String> literals)
+        {
+            this.size = literals.size();
+            for (String literal : literals) {
+                for (int i = 0; i < literal.length(); i++) {
+                    final char c = literal.charAt(i);
+                    if (!alphabet.containsKey(c)) {
+                        alphabet.put(c, alphabet.size() + 1);
+                        if (c < 128) {
+                            asciiAlphabet[c] = alphabet.size();
+                        }
+                    }
+                }
+            }
+            this.width = alphabet.size() + 1;
+
+            // builds the trie. The state 0 is the root, and -1 means no transition yet.
+            int maxStates = 1;
+            for (String literal : literals) {
+                maxStates += literal.length();
+            }
+            int[] table = new int[maxStates * width];
+            Arrays.fill(table, -1);
+            boolean[] accepting = new boolean[maxStates];
+            int states = 1;
+            for (String literal : literals) {
+                int state = 0;
+                for (int i = 0; i < literal.length(); i++) {
+                    final int column = state * width + columnOf(literal.charAt(i));
+                    if (table[column] < 0) {
+                        table[column] = states++;
+                    }
+                    state = table[column];
+                }
+                accepting[state] = true;
+            }
+
+            // fills missing transitions with the transitions of the failure states in breadth-first order
+            final int[] failures = new int[states];
+            final Queue<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < width; c++) {
+                if (table[c] < 0) {
+                    table[c] = 0;
+                }
+                else {
+                    failures[table[c]] = 0;
+                    queue.add(table[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final int state = queue.poll();
+                accepting[state] |= accepting[failures[state]];
+                for (int c = 0; c < width; c++) {
+                    final int next = table[state * width + c];
+                    if (next < 0) {
+                        table[state * width + c] = table[failures[state] * width + c];
+                    }
+                    else {
+                        failures[next] = table[failures[state] * width + c];
+                        queue.add(next);
+                    }
+                }
+            }
+            this.transitions = Arrays.copyOf(table, states * width);
+            this.accepts = Arrays.copyOf(accepting, states);
+        }
+
+        boolean find(String key)
+        {
+            int state = 0;
+            for (int i = 0; i < key.length(); i++) {
+                state = transitions[state * width + columnOf(key.charAt(i))];
+                if (accepts[state]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int columnOf(char c)
+        {
+            if (c < 128) {
+                return asciiAlphabet[c];
+            }
+            final Integer column = alphabet.get(c);
+            return column != null ? column : 0;
+        }
+    }
+}
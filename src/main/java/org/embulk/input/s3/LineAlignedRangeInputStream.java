@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the lines which start in the byte range [start, end) of a file.
+ *
+ * A line belongs to the range where its first byte is. So this stream skips the line which started before
+ * the range, and keeps reading after the end of the range until the line which started in the range ends.
+ * Concatenating all ranges of a file reproduces the file exactly. Lines must be terminated by '\n'.
+ *
+ * Bytes of the range are read by a single request. Bytes after the range are read by small requests so
+ * that the rest of the file is not downloaded just to finish the last line.
+ */
+class LineAlignedRangeInputStream
+        extends InputStream
+{
+    static final long TAIL_REQUEST_SIZE = 256 * 1024;
+
+    private final RangeOpener opener;
+    private final long end;
+    private final long fileSize;
+
+    private InputStream current;
+    private long currentEnd;
+    private long position;
+    private boolean headSkipped;
+    private boolean finished;
+
+    LineAlignedRangeInputStream(RangeOpener opener, long start, long end, long fileSize)
+    {
+        this.opener = opener;
+        this.end = end;
+        this.fileSize = fileSize;
+        // reads from the previous byte to know whether a line starts exactly at the start
+        this.position = start > 0 ? start - 1 : 0;
+        this.headSkipped = start == 0;
+        this.finished = start >= end;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int n;
+        do {
+            n = read(b, 0, 1);
+        } while (n == 0);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        while (!finished) {
+            final long chunkPosition = position;
+            final int n = readRaw(b, off, len);
+            if (n < 0) {
+                finished = true;
+                break;
+            }
+
+            int from = off;
+            final int to = off + n;
+            if (!headSkipped) {
+                int newline = indexOfNewline(b, off, to);
+                if (newline < 0) {
+                    continue;
+                }
+                headSkipped = true;
+                from = newline + 1;
+                if (chunkPosition + (from - off) >= end) {
+                    // the next line starts in the next range
+                    finished = true;
+                    break;
+                }
+            }
+
+            // the line which includes the last byte of the range is the last line
+            int limit = to;
+            final long lastByteIndex = off + (end - 1 - chunkPosition);
+            if (lastByteIndex < to) {
+                int newline = indexOfNewline(b, (int) Math.max(lastByteIndex, from), to);
+                if (newline >= 0) {
+                    limit = newline + 1;
+                    finished = true;
+                }
+            }
+
+            if (limit > from) {
+                if (from > off) {
+                    System.arraycopy(b, from, b, off, limit - from);
+                }
+                return limit - from;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (current != null) {
+            // reads the rest of a small request so that the connection is reused instead of aborted
+            if (currentEnd - position <= TAIL_REQUEST_SIZE) {
+                byte[] skip = new byte[8192];
+                int n;
+                do {
+                    n = current.read(skip);
+                } while (n >= 0);
+            }
+            current.close();
+            current = null;
+        }
+    }
+
+    private int readRaw(byte[] b, int off, int len) throws IOException
+    {
+        if (current != null && position >= currentEnd) {
+            current.close();
+            current = null;
+        }
+        if (current == null) {
+            if (position >= fileSize) {
+                return -1;
+            }
+            currentEnd = position < end ? end : Math.min(fileSize, position + TAIL_REQUEST_SIZE);
+            current = opener.open(position, currentEnd - 1);
+        }
+        int n = current.read(b, off, (int) Math.min(len, currentEnd - position));
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    private static int indexOfNewline(byte[] b, int from, int to)
+    {
+        for (int i = from; i < to; i++) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
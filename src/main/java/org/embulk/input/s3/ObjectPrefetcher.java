@@ -0,0 +1,161 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.file.InputStreamFileInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opens the next objects of a task in background threads while the current object is read.
+ *
+ * Objects are returned in the order they were added. Up to {@code depth} objects are opened ahead.
+ */
+class ObjectPrefetcher
+        implements AutoCloseable
+{
+    private static final Logger log = LoggerFactory.getLogger(ObjectPrefetcher.class);
+
+    private final int depth;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Deque<Prefetch> queue = new ArrayDeque<>();
+
+    ObjectPrefetcher(final int depth)
+    {
+        this.depth = depth;
+        this.executor = Executors.newFixedThreadPool(depth, new DaemonThreadFactory("embulk-input-s3-prefetch-"));
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * Opens objects by threads of the executor shared with others. The executor is not shut down by {@link #close()}.
+     */
+    ObjectPrefetcher(final int depth, final ExecutorService executor)
+    {
+        this.depth = depth;
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Returns true if objects enough to keep {@code depth} objects opened ahead after the next {@link #poll()} are added.
+     */
+    boolean isFull()
+    {
+        return queue.size() > depth;
+    }
+
+    boolean isEmpty()
+    {
+        return queue.isEmpty();
+    }
+
+    void add(final Callable<InputStreamFileInput.InputStreamWithHints> opener)
+    {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Future<InputStreamFileInput.InputStreamWithHints> future = executor.submit(
+                () -> claimed.compareAndSet(false, true) ? opener.call() : null);
+        queue.addLast(new Prefetch(claimed, future));
+    }
+
+    /**
+     * Returns the next opened object, or null if no objects are added.
+     */
+    InputStreamFileInput.InputStreamWithHints poll() throws IOException
+    {
+        final Prefetch next = queue.pollFirst();
+        if (next == null) {
+            return null;
+        }
+        try {
+            return next.future.get();
+        }
+        catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Cancels objects not being opened yet, and closes objects which are opened but not returned.
+     */
+    @Override
+    public void close()
+    {
+        for (final Prefetch prefetch : queue) {
+            // a shared executor may run the task much later, so the task is cancelled instead of waited for
+            if (prefetch.claimed.compareAndSet(false, true)) {
+                prefetch.future.cancel(false);
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+        // waits only for objects being opened, so that all opened objects are closed here
+        for (final Prefetch prefetch : queue) {
+            if (prefetch.future.isCancelled()) {
+                continue;
+            }
+            try {
+                final InputStreamFileInput.InputStreamWithHints opened = prefetch.future.get();
+                if (opened != null) {
+                    opened.getInputStream().close();
+                }
+            }
+            catch (final Exception ex) {
+                log.debug("Failed to close a prefetched object", ex);
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * An object to open. Either the task or {@link #close()} claims it first, so that it's opened only if the task wins.
+     */
+    private static class Prefetch
+    {
+        private final AtomicBoolean claimed;
+        private final Future<InputStreamFileInput.InputStreamWithHints> future;
+
+        Prefetch(final AtomicBoolean claimed, final Future<InputStreamFileInput.InputStreamWithHints> future)
+        {
+            this.claimed = claimed;
+            this.future = future;
+        }
+    }
+}
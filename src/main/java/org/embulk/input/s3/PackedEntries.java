@@ -0,0 +1,312 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Entries of all tasks stored in primitive arrays. Entries of task i are at [taskOffsets[i], taskOffsets[i + 1]).
+ *
+ * Range columns are allocated only if any entry has a range.
+ */
+final class PackedEntries
+{
+    private static final int FORMAT_VERSION = 1;
+
+    private final int[] taskOffsets;
+    private final int[] indexes;
+    private final long[] sizes;
+    private final long[] rangeStarts;
+    private final long[] rangeEnds;
+
+    private PackedEntries(int[] taskOffsets, int[] indexes, long[] sizes, long[] rangeStarts, long[] rangeEnds)
+    {
+        this.taskOffsets = taskOffsets;
+        this.indexes = indexes;
+        this.sizes = sizes;
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+    }
+
+    static PackedEntries of(List<List<FileList.Entry>> tasks)
+    {
+        final Builder builder = new Builder();
+        for (List<FileList.Entry> task : tasks) {
+            for (FileList.Entry entry : task) {
+                builder.add(entry);
+            }
+            builder.endTask();
+        }
+        return builder.build();
+    }
+
+    int getTaskCount()
+    {
+        return taskOffsets.length - 1;
+    }
+
+    int getEntryCount()
+    {
+        return taskOffsets[taskOffsets.length - 1];
+    }
+
+    /**
+     * Returns a view of entries of the task. Entry objects are created when they are got.
+     */
+    List<FileList.Entry> getTask(int i)
+    {
+        return new TaskView(taskOffsets[i], taskOffsets[i + 1]);
+    }
+
+    FileList.Entry getEntry(int position)
+    {
+        if (rangeStarts == null) {
+            return new FileList.Entry(indexes[position], sizes[position]);
+        }
+        return new FileList.Entry(indexes[position], sizes[position], rangeStarts[position], rangeEnds[position]);
+    }
+
+    int getTaskOffset(int i)
+    {
+        return taskOffsets[i];
+    }
+
+    /**
+     * Encodes entries into deflated varints. An entry is written as the difference of its index from the previous
+     * entry with a flag of a range, the size, and the range start and length if it has a range.
+     */
+    byte[] encode()
+    {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (OutputStream out = new BufferedOutputStream(new DeflaterOutputStream(binary))) {
+            writeVarlong(out, FORMAT_VERSION);
+            writeVarlong(out, getTaskCount());
+            for (int i = 0; i < getTaskCount(); i++) {
+                writeVarlong(out, taskOffsets[i + 1] - taskOffsets[i]);
+            }
+            int previousIndex = 0;
+            for (int i = 0; i < getEntryCount(); i++) {
+                final boolean ranged = rangeStarts != null && rangeStarts[i] >= 0;
+                final long delta = (long) indexes[i] - previousIndex;
+                writeVarlong(out, (zigzag(delta) << 1) | (ranged ? 1 : 0));
+                writeVarlong(out, sizes[i]);
+                if (ranged) {
+                    writeVarlong(out, rangeStarts[i]);
+                    writeVarlong(out, rangeEnds[i] - rangeStarts[i]);
+                }
+                previousIndex = indexes[i];
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return binary.toByteArray();
+    }
+
+    static PackedEntries decode(byte[] encoded)
+    {
+        try (InputStream in = new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+            final long version = readVarlong(in);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported format of file list entries: " + version);
+            }
+            final int taskCount = (int) readVarlong(in);
+            final int[] taskOffsets = new int[taskCount + 1];
+            for (int i = 0; i < taskCount; i++) {
+                taskOffsets[i + 1] = taskOffsets[i] + (int) readVarlong(in);
+            }
+            final int entryCount = taskOffsets[taskCount];
+            final int[] indexes = new int[entryCount];
+            final long[] sizes = new long[entryCount];
+            long[] rangeStarts = null;
+            long[] rangeEnds = null;
+            int previousIndex = 0;
+            for (int i = 0; i < entryCount; i++) {
+                final long head = readVarlong(in);
+                indexes[i] = (int) (previousIndex + unzigzag(head >>> 1));
+                sizes[i] = readVarlong(in);
+                if ((head & 1) != 0) {
+                    if (rangeStarts == null) {
+                        rangeStarts = newRangeColumn(entryCount);
+                        rangeEnds = newRangeColumn(entryCount);
+                    }
+                    rangeStarts[i] = readVarlong(in);
+                    rangeEnds[i] = rangeStarts[i] + readVarlong(in);
+                }
+                previousIndex = indexes[i];
+            }
+            return new PackedEntries(taskOffsets, indexes, sizes, rangeStarts, rangeEnds);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static long[] newRangeColumn(int length)
+    {
+        final long[] column = new long[length];
+        Arrays.fill(column, -1L);
+        return column;
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarlong(OutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarlong(InputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Broken file list entries: unexpected end");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Broken file list entries: too long varint");
+    }
+
+    private class TaskView
+            extends AbstractList<FileList.Entry>
+            implements RandomAccess
+    {
+        private final int from;
+        private final int to;
+
+        TaskView(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public FileList.Entry get(int i)
+        {
+            if (i < 0 || i >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (to - from));
+            }
+            return getEntry(from + i);
+        }
+
+        @Override
+        public int size()
+        {
+            return to - from;
+        }
+    }
+
+    /**
+     * Appends entries task by task.
+     */
+    static class Builder
+    {
+        private int[] taskOffsets = new int[16];
+        private int taskCount = 0;
+        private int[] indexes = new int[1024];
+        private long[] sizes = new long[1024];
+        private long[] rangeStarts = null;
+        private long[] rangeEnds = null;
+        private int entryCount = 0;
+
+        void add(FileList.Entry entry)
+        {
+            if (entryCount == indexes.length) {
+                final int capacity = indexes.length * 2;
+                indexes = Arrays.copyOf(indexes, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                if (rangeStarts != null) {
+                    rangeStarts = growRangeColumn(rangeStarts, capacity);
+                    rangeEnds = growRangeColumn(rangeEnds, capacity);
+                }
+            }
+            indexes[entryCount] = entry.getIndex();
+            sizes[entryCount] = entry.getSize();
+            if (entry.hasRange()) {
+                if (rangeStarts == null) {
+                    rangeStarts = newRangeColumn(indexes.length);
+                    rangeEnds = newRangeColumn(indexes.length);
+                }
+                rangeStarts[entryCount] = entry.getRangeStart();
+                rangeEnds[entryCount] = entry.getRangeEnd();
+            }
+            entryCount++;
+        }
+
+        // ends the current task. It does nothing if the task has no entries.
+        void endTask()
+        {
+            if (entryCount == taskOffsets[taskCount]) {
+                return;
+            }
+            if (taskCount + 2 > taskOffsets.length) {
+                taskOffsets = Arrays.copyOf(taskOffsets, taskOffsets.length * 2);
+            }
+            taskCount++;
+            taskOffsets[taskCount] = entryCount;
+        }
+
+        PackedEntries build()
+        {
+            endTask();
+            return new PackedEntries(
+                    Arrays.copyOf(taskOffsets, taskCount + 1),
+                    Arrays.copyOf(indexes, entryCount),
+                    Arrays.copyOf(sizes, entryCount),
+                    rangeStarts != null ? Arrays.copyOf(rangeStarts, entryCount) : null,
+                    rangeEnds != null ? Arrays.copyOf(rangeEnds, entryCount) : null);
+        }
+
+        private static long[] growRangeColumn(long[] column, int capacity)
+        {
+            final long[] grown = Arrays.copyOf(column, capacity);
+            Arrays.fill(grown, column.length, capacity, -1L);
+            return grown;
+        }
+    }
+}
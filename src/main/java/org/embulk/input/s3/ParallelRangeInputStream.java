@@ -0,0 +1,191 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a byte range of an object by downloading its parts concurrently, and returns the bytes in order.
+ *
+ * Up to {@code concurrency} parts are downloaded ahead of the part being read. A new part is started only when
+ * the reader moves to the next part, so memory is bounded by {@code (concurrency + 1) * partSize} bytes.
+ */
+class ParallelRangeInputStream
+        extends InputStream
+{
+    private final RangeOpener opener;
+    private final ExecutorService executor;
+    private final long end;
+    private final int partSize;
+    private final int concurrency;
+
+    private final Deque<Part> parts = new ArrayDeque<>();
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private long nextPartStart;
+    private byte[] current;
+    private int currentLength;
+    private int currentPosition;
+
+    ParallelRangeInputStream(RangeOpener opener, long start, long end, int partSize, int concurrency, ExecutorService executor)
+    {
+        this.opener = opener;
+        this.executor = executor;
+        this.end = end;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+        this.nextPartStart = start;
+        schedule();
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextPartIfConsumed()) {
+            return -1;
+        }
+        return current[currentPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextPartIfConsumed()) {
+            return -1;
+        }
+        final int n = Math.min(len, currentLength - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, n);
+        currentPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close()
+    {
+        for (final Part part : parts) {
+            part.abort();
+        }
+        parts.clear();
+        current = null;
+    }
+
+    private boolean nextPartIfConsumed() throws IOException
+    {
+        while (current == null || currentPosition >= currentLength) {
+            if (current != null) {
+                freeBuffers.add(current);
+                current = null;
+            }
+            final Part part = parts.pollFirst();
+            if (part == null) {
+                return false;
+            }
+            schedule();
+            current = part.await();
+            currentLength = part.length;
+            currentPosition = 0;
+        }
+        return true;
+    }
+
+    private void schedule()
+    {
+        while (parts.size() < concurrency && nextPartStart < end) {
+            final Part part = new Part(nextPartStart, (int) Math.min(partSize, end - nextPartStart));
+            part.future = executor.submit(part);
+            parts.addLast(part);
+            nextPartStart += part.length;
+        }
+    }
+
+    private class Part
+            implements Callable<byte[]>
+    {
+        private final long start;
+        private final int length;
+        private Future<byte[]> future;
+        private volatile boolean aborted;
+
+        Part(long start, int length)
+        {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public byte[] call() throws IOException
+        {
+            byte[] buffer = freeBuffers.poll();
+            if (buffer == null) {
+                buffer = new byte[partSize];
+            }
+            try (InputStream in = opener.open(start, start + length - 1)) {
+                int offset = 0;
+                while (offset < length) {
+                    if (aborted) {
+                        throw new InterruptedIOException("Download is aborted");
+                    }
+                    final int n = in.read(buffer, offset, length - offset);
+                    if (n < 0) {
+                        throw new EOFException(String.format("Range from %,d bytes is shorter than %,d bytes", start, length));
+                    }
+                    offset += n;
+                }
+                return buffer;
+            }
+        }
+
+        byte[] await() throws IOException
+        {
+            try {
+                return future.get();
+            }
+            catch (final ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new RuntimeException(ex.getCause());
+            }
+            catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        void abort()
+        {
+            aborted = true;
+            future.cancel(false);
+        }
+    }
+}
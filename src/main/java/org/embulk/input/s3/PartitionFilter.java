@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * PartitionFilter is config unit to select values of a Hive style partition key. Values are compared as strings.
+ */
+public interface PartitionFilter
+    extends Task
+{
+    // inclusive lower bound
+    @Config("from")
+    @ConfigDefault("null")
+    Optional<String> getFrom();
+
+    // exclusive upper bound
+    @Config("to")
+    @ConfigDefault("null")
+    Optional<String> getTo();
+
+    @Config("in")
+    @ConfigDefault("null")
+    Optional<List<String>> getIn();
+}
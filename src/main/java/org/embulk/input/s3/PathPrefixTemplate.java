@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+/**
+ * PathPrefixTemplate is config unit to expand time placeholders in path_prefix like %Y/%m/%d/%H.
+ */
+public interface PathPrefixTemplate
+    extends Task
+{
+    @Config("time_zone")
+    @ConfigDefault("\"UTC\"")
+    String getTimeZone();
+
+    // also lists prefixes of this many seconds before last_modified_time, for files put late
+    @Config("lookback_seconds")
+    @ConfigDefault("0")
+    long getLookbackSeconds();
+}
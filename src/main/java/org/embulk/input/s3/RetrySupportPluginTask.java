@@ -33,4 +33,17 @@ public interface RetrySupportPluginTask extends Task
     @Config("maximum_retry_interval_millis")
     @ConfigDefault("480000")
     int getMaximumRetryIntervalMillis();
+
+    // "legacy" or "adaptive"
+    @Config("retry_mode")
+    @ConfigDefault("\"legacy\"")
+    String getRetryMode();
+
+    @Config("quick_retry_interval_millis")
+    @ConfigDefault("100")
+    int getQuickRetryIntervalMillis();
+
+    @Config("retry_budget_per_second")
+    @ConfigDefault("10.0")
+    double getRetryBudgetPerSecond();
 }
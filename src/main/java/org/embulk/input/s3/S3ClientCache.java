@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Shares AmazonS3 clients in a JVM among the transaction and tasks which have the same client configuration.
+ *
+ * A client is reference-counted by {@link Lease}s, and shut down when it is not leased for the idle timeout
+ * so that a following task can reuse its connections.
+ */
+class S3ClientCache
+{
+    private static final Logger log = LoggerFactory.getLogger(S3ClientCache.class);
+
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static final S3ClientCache INSTANCE = new S3ClientCache(DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    private final long idleTimeoutMillis;
+    private final Map<Object, CachedClient> clients = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    S3ClientCache(final long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    static S3ClientCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Leases the client cached with the key, or a new client created by the factory.
+     *
+     * @param key object which identifies the configuration of the client by equals()
+     */
+    synchronized Lease acquire(final Object key, final Supplier<AmazonS3> factory)
+    {
+        CachedClient cached = clients.get(key);
+        if (cached == null) {
+            cached = new CachedClient(key, factory.get());
+            clients.put(key, cached);
+        }
+        else if (cached.idleShutdown != null) {
+            cached.idleShutdown.cancel(false);
+            cached.idleShutdown = null;
+        }
+        cached.references++;
+        return new Lease(cached);
+    }
+
+    synchronized int size()
+    {
+        return clients.size();
+    }
+
+    private synchronized void release(final CachedClient cached)
+    {
+        cached.references--;
+        if (cached.references > 0) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("embulk-input-s3-client-cache-"));
+        }
+        cached.idleShutdown = scheduler.schedule(() -> shutdownIfIdle(cached), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void shutdownIfIdle(final CachedClient cached)
+    {
+        if (cached.references > 0 || clients.get(cached.key) != cached) {
+            return;
+        }
+        clients.remove(cached.key);
+        log.debug("Shutting down an idle S3 client");
+        cached.client.shutdown();
+    }
+
+    class Lease
+            implements AutoCloseable
+    {
+        private final AmazonS3 client;
+        private CachedClient cached;
+
+        private Lease(final CachedClient cached)
+        {
+            this.client = cached.client;
+            this.cached = cached;
+        }
+
+        AmazonS3 getClient()
+        {
+            return client;
+        }
+
+        @Override
+        public void close()
+        {
+            if (cached != null) {
+                release(cached);
+                cached = null;
+            }
+        }
+    }
+
+    private static class CachedClient
+    {
+        private final Object key;
+        private final AmazonS3 client;
+        private int references;
+        private ScheduledFuture<?> idleShutdown;
+
+        CachedClient(final Object key, final AmazonS3 client)
+        {
+            this.key = key;
+            this.client = client;
+        }
+    }
+}
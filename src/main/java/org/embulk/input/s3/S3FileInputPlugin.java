@@ -32,9 +32,12 @@ import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.TaskReport;
 import org.embulk.config.TaskSource;
+import org.embulk.input.s3.explorer.S3HivePartitionFileExplorer;
+import org.embulk.input.s3.explorer.S3InventoryFileExplorer;
 import org.embulk.input.s3.explorer.S3NameOrderPrefixFileExplorer;
 import org.embulk.input.s3.explorer.S3SingleFileExplorer;
 import org.embulk.input.s3.explorer.S3TimeOrderPrefixFileExplorer;
+import org.embulk.input.s3.explorer.S3TimeTemplatePrefixFileExplorer;
 import org.embulk.spi.BufferAllocator;
 import org.embulk.spi.Exec;
 import org.embulk.spi.FileInputPlugin;
@@ -53,14 +56,30 @@ import org.embulk.util.retryhelper.RetryExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 public class S3FileInputPlugin
         implements FileInputPlugin
@@ -92,6 +111,10 @@ public class S3FileInputPlugin
         Optional<HttpProxy> getHttpProxy();
         void setHttpProxy(Optional<HttpProxy> httpProxy);
 
+        @Config("client_config")
+        @ConfigDefault("null")
+        Optional<ClientConfig> getClientConfig();
+
         @Config("incremental")
         @ConfigDefault("true")
         boolean getIncremental();
@@ -108,6 +131,62 @@ public class S3FileInputPlugin
         @ConfigDefault("null")
         Optional<String> getLastModifiedTime();
 
+        @Config("listing_parallelism")
+        @ConfigDefault("1")
+        int getListingParallelism();
+
+        @Config("list_page_size")
+        @ConfigDefault("1000")
+        int getListPageSize();
+
+        @Config("inventory")
+        @ConfigDefault("null")
+        Optional<InventoryConfig> getInventory();
+
+        @Config("partition_filter")
+        @ConfigDefault("{}")
+        Map<String, PartitionFilter> getPartitionFilter();
+
+        @Config("path_prefix_template")
+        @ConfigDefault("null")
+        Optional<PathPrefixTemplate> getPathPrefixTemplate();
+
+        @Config("prefetch_depth")
+        @ConfigDefault("0")
+        int getPrefetchDepth();
+
+        @Config("prefetch_buffer_size")
+        @ConfigDefault("0")
+        long getPrefetchBufferSize();
+
+        @Config("download_concurrency")
+        @ConfigDefault("1")
+        int getDownloadConcurrency();
+
+        @Config("download_part_size")
+        @ConfigDefault("16777216")
+        long getDownloadPartSize();
+
+        @Config("min_read_throughput")
+        @ConfigDefault("0")
+        long getMinReadThroughput();
+
+        @Config("min_read_throughput_window_seconds")
+        @ConfigDefault("30")
+        int getMinReadThroughputWindowSeconds();
+
+        @Config("shared_download_threads")
+        @ConfigDefault("0")
+        int getSharedDownloadThreads();
+
+        @Config("hedged_get")
+        @ConfigDefault("null")
+        Optional<HedgedGetConfig> getHedgedGet();
+
+        @Config("streaming_tasks")
+        @ConfigDefault("0")
+        int getStreamingTasks();
+
         // TODO timeout, ssl, etc
 
         ////////////////////////////////////////
@@ -127,6 +206,16 @@ public class S3FileInputPlugin
         Optional<Date> getEndModifiedTime();
         void setEndModifiedTime(Optional<Date> endModifiedTime);
 
+        /**
+         * streaming_session is set if streaming_tasks is enabled, to find the queue of files listed in background.
+         *
+         * It is internal state and must not be set in config.yml
+         */
+        @Config("__streaming_session")
+        @ConfigDefault("null")
+        Optional<String> getStreamingSession();
+        void setStreamingSession(Optional<String> streamingSession);
+
         @Config("endpoint")
         @ConfigDefault("null")
         Optional<String> getEndpoint();
@@ -144,6 +233,9 @@ public class S3FileInputPlugin
 
         errorIfInternalParamsAreSet(task);
         validateInputTask(task);
+        if (task.getStreamingTasks() > 0) {
+            return runStreaming(task, control);
+        }
         // list files recursively
         task.setFiles(listFiles(task));
 
@@ -158,12 +250,69 @@ public class S3FileInputPlugin
     {
         final TaskMapper taskMapper = CONFIG_MAPPER_FACTORY.createTaskMapper();
         final PluginTask task = taskMapper.map(taskSource, PluginTask.class);
+        if (task.getStreamingSession().isPresent()) {
+            throw new ConfigException("A transaction with streaming_tasks can't be resumed");
+        }
 
         // validate task
-        newS3Client(task);
+        leaseS3Client(task).close();
 
         control.run(taskSource, taskCount);
 
+        return nextConfigDiff(task);
+    }
+
+    /**
+     * Runs tasks while files are listed in background. Each task reads files from a queue shared in the JVM
+     * until all files are listed and read.
+     */
+    private ConfigDiff runStreaming(final PluginTask task, final FileInputPlugin.Control control)
+    {
+        final String session = UUID.randomUUID().toString();
+        task.setStreamingSession(Optional.of(session));
+        // tasks don't read the file list. The listed file list is used only for the next config.
+        task.setFiles(new FileList.Builder().build());
+        final ExecutorService lister = Executors.newSingleThreadExecutor(new DaemonThreadFactory("embulk-input-s3-streaming-"));
+        try (StreamingFileQueue queue = StreamingFileQueue.register(session, STREAMING_QUEUE_CAPACITY)) {
+            final Future<FileList> listing = lister.submit(() -> {
+                try {
+                    final FileList files = listFiles(task, queue::put);
+                    queue.finish(null);
+                    return files;
+                }
+                catch (Throwable ex) {
+                    queue.finish(ex);
+                    throw ex;
+                }
+            });
+            logger.info("Reading files with {} streaming tasks while listing files", task.getStreamingTasks());
+            control.run(task.toTaskSource(), task.getStreamingTasks());
+            task.setFiles(listing.get());
+        }
+        catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        finally {
+            lister.shutdownNow();
+        }
+
+        try {
+            return nextConfigDiff(task);
+        }
+        finally {
+            task.getFiles().deleteSpillFile();
+        }
+    }
+
+    private ConfigDiff nextConfigDiff(final PluginTask task)
+    {
         // build next config
         ConfigDiff configDiff = CONFIG_MAPPER_FACTORY.newConfigDiff();
 
@@ -187,7 +336,9 @@ public class S3FileInputPlugin
                         int taskCount,
                         List<TaskReport> successTaskReports)
     {
-        // do nothing
+        final TaskMapper taskMapper = CONFIG_MAPPER_FACTORY.createTaskMapper();
+        final PluginTask task = taskMapper.map(taskSource, PluginTask.class);
+        task.getFiles().deleteSpillFile();
     }
 
     @Override
@@ -208,7 +359,7 @@ public class S3FileInputPlugin
         ClientConfiguration clientConfig = new ClientConfiguration();
 
         //clientConfig.setProtocol(Protocol.HTTP);
-        clientConfig.setMaxConnections(50); // SDK default: 50
+        clientConfig.setMaxConnections(getMaxConnections(task)); // SDK default: 50
 //        clientConfig.setMaxErrorRetry(3); // SDK default: 3
         clientConfig.setSocketTimeout(8 * 60 * 1000); // SDK default: 50*1000
         clientConfig.setRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY);
@@ -216,10 +367,59 @@ public class S3FileInputPlugin
         if (task.getHttpProxy().isPresent()) {
             setHttpProxyInAwsClient(clientConfig, task.getHttpProxy().get());
         }
+        if (task.getClientConfig().isPresent()) {
+            setClientConfigInAwsClient(clientConfig, task.getClientConfig().get());
+        }
 
         return clientConfig;
     }
 
+    // a client is shared by tasks running in parallel, so the pool is sized for all of them
+    static int getMaxConnections(PluginTask task)
+    {
+        if (task.getClientConfig().isPresent() && task.getClientConfig().get().getMaxConnections().isPresent()) {
+            return task.getClientConfig().get().getMaxConnections().get();
+        }
+        // the local executor runs tasks with threads twice as many as processors by default
+        final int tasks = Runtime.getRuntime().availableProcessors() * 2;
+        if (task.getSharedDownloadThreads() > 0) {
+            // requests in background are made only by the shared threads
+            return Math.max(50, tasks + task.getSharedDownloadThreads());
+        }
+        final int connectionsPerTask = task.getDownloadConcurrency() + task.getPrefetchDepth() + 1;
+        return Math.max(50, tasks * connectionsPerTask);
+    }
+
+    private void setClientConfigInAwsClient(ClientConfiguration clientConfig, ClientConfig config)
+    {
+        if (config.getConnectionTimeoutMillis().isPresent()) {
+            clientConfig.setConnectionTimeout(config.getConnectionTimeoutMillis().get());
+        }
+        if (config.getSocketTimeoutMillis().isPresent()) {
+            clientConfig.setSocketTimeout(config.getSocketTimeoutMillis().get());
+        }
+        if (config.getConnectionTtlMillis().isPresent()) {
+            clientConfig.setConnectionTTL(config.getConnectionTtlMillis().get());
+        }
+        if (config.getConnectionMaxIdleMillis().isPresent()) {
+            clientConfig.setConnectionMaxIdleMillis(config.getConnectionMaxIdleMillis().get());
+        }
+        if (config.getTcpKeepAlive().isPresent()) {
+            clientConfig.setUseTcpKeepAlive(config.getTcpKeepAlive().get());
+        }
+        if (config.getSocketSendBufferSizeHint().isPresent() || config.getSocketReceiveBufferSizeHint().isPresent()) {
+            clientConfig.setSocketBufferSizeHints(
+                    config.getSocketSendBufferSizeHint().orElse(0),
+                    config.getSocketReceiveBufferSizeHint().orElse(0));
+        }
+        if (config.getUseExpectContinue().isPresent()) {
+            clientConfig.setUseExpectContinue(config.getUseExpectContinue().get());
+        }
+        if (config.getUseGzip().isPresent()) {
+            clientConfig.setUseGzip(config.getUseGzip().get());
+        }
+    }
+
     private void setHttpProxyInAwsClient(ClientConfiguration clientConfig, HttpProxy httpProxy)
     {
         // host
@@ -251,19 +451,29 @@ public class S3FileInputPlugin
      */
     private static RetryExecutor retryExecutorFrom(RetrySupportPluginTask task)
     {
-        return RetryExecutor.builder()
+        final RetryExecutor executor = RetryExecutor.builder()
             .withRetryLimit(task.getMaximumRetries())
             .withInitialRetryWaitMillis(task.getInitialRetryIntervalMillis())
             .withMaxRetryWaitMillis(task.getMaximumRetryIntervalMillis())
             .build();
+        if (task.getRetryMode().equals("adaptive")) {
+            new AdaptiveRetryPolicy(task.getMaximumRetries(), task.getQuickRetryIntervalMillis(), task.getInitialRetryIntervalMillis(),
+                    task.getMaximumRetryIntervalMillis(), task.getRetryBudgetPerSecond()).register(executor);
+        }
+        return executor;
     }
 
     private FileList listFiles(final PluginTask task)
     {
-        try {
-            AmazonS3 client = newS3Client(task);
+        return listFiles(task, null);
+    }
+
+    private FileList listFiles(final PluginTask task, final BiConsumer<String, Long> listener)
+    {
+        try (S3ClientCache.Lease lease = leaseS3Client(task)) {
+            AmazonS3 client = lease.getClient();
             String bucketName = task.getBucket();
-            FileList.Builder builder = new FileList.Builder(task);
+            FileList.Builder builder = new FileList.Builder(task).onAdd(listener);
             RetryExecutor retryExec = retryExecutorFrom(task);
 
             if (task.getPath().isPresent()) {
@@ -278,19 +488,56 @@ public class S3FileInputPlugin
                 logger.info("Listing files with prefix \"/\". This doesn't mean all files in a bucket. If you intend to read all files, use \"path_prefix: ''\" (empty string) instead.");
             }
 
-            if (task.getUseModifiedTime()) {
+            if (task.getInventory().isPresent()) {
+                final InventoryConfig inventory = task.getInventory().get();
+                Optional<Date> from = Optional.empty();
+                String lastPath = null;
+                if (task.getUseModifiedTime()) {
+                    from = task.getLastModifiedTime().isPresent()
+                            ? Optional.of(parseDate(task.getLastModifiedTime().get()))
+                            : Optional.empty();
+                }
+                else {
+                    lastPath = task.getLastPath().orElse(null);
+                }
+                final S3InventoryFileExplorer explorer = new S3InventoryFileExplorer(bucketName, client, retryExec,
+                        inventory.getBucket().orElse(bucketName), inventory.getManifest(), task.getPathPrefix().get(),
+                        task.getSkipGlacierObjects(), lastPath, from, task.getUseModifiedTime(), task.getListingParallelism());
+                explorer.addToBuilder(builder);
+                if (task.getUseModifiedTime()) {
+                    // objects modified after the report was created are not in it, so the next run lists them from there
+                    task.setEndModifiedTime(Optional.of(explorer.getCreationTime()));
+                }
+            }
+            else if (task.getUseModifiedTime()) {
                 Date now = new Date();
                 Optional<Date> from = task.getLastModifiedTime().isPresent()
                         ? Optional.of(parseDate(task.getLastModifiedTime().get()))
                         : Optional.empty();
                 task.setEndModifiedTime(Optional.of(now));
 
-                new S3TimeOrderPrefixFileExplorer(bucketName, client, retryExec, task.getPathPrefix().get(),
-                        task.getSkipGlacierObjects(), from, now).addToBuilder(builder);
+                if (task.getPathPrefixTemplate().isPresent()) {
+                    final PathPrefixTemplate template = task.getPathPrefixTemplate().get();
+                    new S3TimeTemplatePrefixFileExplorer(bucketName, client, retryExec, task.getPathPrefix().get(),
+                            task.getSkipGlacierObjects(), from, now, task.getListingParallelism(),
+                            parseZone(template.getTimeZone()), Duration.ofSeconds(template.getLookbackSeconds()))
+                            .withPageSize(task.getListPageSize()).addToBuilder(builder);
+                }
+                else {
+                    new S3TimeOrderPrefixFileExplorer(bucketName, client, retryExec, task.getPathPrefix().get(),
+                            task.getSkipGlacierObjects(), from, now, task.getListingParallelism())
+                            .withPageSize(task.getListPageSize()).addToBuilder(builder);
+                }
+            }
+            else if (!task.getPartitionFilter().isEmpty()) {
+                new S3HivePartitionFileExplorer(bucketName, client, retryExec, task.getPathPrefix().get(), task.getSkipGlacierObjects(),
+                        task.getLastPath().orElse(null), task.getListingParallelism(), partitionFilters(task))
+                        .withPageSize(task.getListPageSize()).addToBuilder(builder);
             }
             else {
                 new S3NameOrderPrefixFileExplorer(bucketName, client, retryExec, task.getPathPrefix().get(),
-                        task.getSkipGlacierObjects(), task.getLastPath().orElse(null)).addToBuilder(builder);
+                        task.getSkipGlacierObjects(), task.getLastPath().orElse(null), task.getListingParallelism())
+                        .withPageSize(task.getListPageSize()).addToBuilder(builder);
             }
 
             logger.info("Found total [{}] files", builder.size());
@@ -314,6 +561,101 @@ public class S3FileInputPlugin
         if (!task.getPathPrefix().isPresent() && !task.getPath().isPresent()) {
             throw new ConfigException("Either path or path_prefix is required");
         }
+        if (task.getInventory().isPresent() && !task.getPathPrefix().isPresent()) {
+            throw new ConfigException("path_prefix is required to list files from inventory");
+        }
+        if (task.getListingParallelism() < 1) {
+            throw new ConfigException("listing_parallelism must be 1 or larger");
+        }
+        if (task.getListPageSize() < 1) {
+            throw new ConfigException("list_page_size must be 1 or larger");
+        }
+        if (!task.getPartitionFilter().isEmpty() && (task.getInventory().isPresent() || task.getUseModifiedTime())) {
+            throw new ConfigException("partition_filter can't be used with inventory or use_modified_time");
+        }
+        if (task.getPathPrefixTemplate().isPresent()) {
+            if (!task.getUseModifiedTime() || !task.getPathPrefix().isPresent() || task.getInventory().isPresent()) {
+                throw new ConfigException("path_prefix_template requires use_modified_time and path_prefix, and can't be used with inventory");
+            }
+            if (task.getPathPrefixTemplate().get().getLookbackSeconds() < 0) {
+                throw new ConfigException("path_prefix_template.lookback_seconds must not be negative");
+            }
+            parseZone(task.getPathPrefixTemplate().get().getTimeZone());
+        }
+        if (task.getStreamingTasks() < 0) {
+            throw new ConfigException("streaming_tasks must not be negative");
+        }
+        if (task.getStreamingTasks() > 0 && task.getTotalFileCountLimit() != Integer.MAX_VALUE) {
+            // files listed in parallel are limited only when the list is built, after tasks read them
+            throw new ConfigException("streaming_tasks can't be used with total_file_count_limit");
+        }
+        if (task.getMinReadThroughput() < 0) {
+            throw new ConfigException("min_read_throughput must not be negative");
+        }
+        if (task.getMinReadThroughputWindowSeconds() < 1) {
+            throw new ConfigException("min_read_throughput_window_seconds must be 1 or larger");
+        }
+        if (task.getSharedDownloadThreads() < 0) {
+            throw new ConfigException("shared_download_threads must not be negative");
+        }
+        if (!task.getRetryMode().equals("legacy") && !task.getRetryMode().equals("adaptive")) {
+            throw new ConfigException("retry_mode must be either \"legacy\" or \"adaptive\": " + task.getRetryMode());
+        }
+        if (task.getQuickRetryIntervalMillis() < 0) {
+            throw new ConfigException("quick_retry_interval_millis must not be negative");
+        }
+        if (!(task.getRetryBudgetPerSecond() > 0)) {
+            throw new ConfigException("retry_budget_per_second must be larger than 0");
+        }
+        if (task.getHedgedGet().isPresent()) {
+            final HedgedGetConfig hedgedGet = task.getHedgedGet().get();
+            if (!(hedgedGet.getPercentile() > 0 && hedgedGet.getPercentile() <= 100)) {
+                throw new ConfigException("hedged_get.percentile must be larger than 0 and 100 or smaller");
+            }
+            if (hedgedGet.getInitialDelayMillis() < 0) {
+                throw new ConfigException("hedged_get.initial_delay_millis must not be negative");
+            }
+            if (!(hedgedGet.getMaxRatio() >= 0 && hedgedGet.getMaxRatio() <= 1)) {
+                throw new ConfigException("hedged_get.max_ratio must be between 0 and 1");
+            }
+        }
+        if (task.getPrefetchDepth() < 0) {
+            throw new ConfigException("prefetch_depth must not be negative");
+        }
+        if (task.getPrefetchBufferSize() > Integer.MAX_VALUE) {
+            throw new ConfigException("prefetch_buffer_size must be " + Integer.MAX_VALUE + " or smaller");
+        }
+        if (task.getClientConfig().isPresent() && task.getClientConfig().get().getMaxConnections().orElse(1) < 1) {
+            throw new ConfigException("client_config.max_connections must be 1 or larger");
+        }
+        if (task.getDownloadConcurrency() < 1) {
+            throw new ConfigException("download_concurrency must be 1 or larger");
+        }
+        if (task.getDownloadPartSize() < 1 || task.getDownloadPartSize() > Integer.MAX_VALUE) {
+            throw new ConfigException("download_part_size must be between 1 and " + Integer.MAX_VALUE);
+        }
+    }
+
+    static Map<String, Predicate<String>> partitionFilters(final PluginTask task)
+    {
+        final Map<String, Predicate<String>> filters = new HashMap<>();
+        for (final Map.Entry<String, PartitionFilter> entry : task.getPartitionFilter().entrySet()) {
+            final PartitionFilter filter = entry.getValue();
+            filters.put(entry.getKey(), value -> (!filter.getFrom().isPresent() || value.compareTo(filter.getFrom().get()) >= 0)
+                    && (!filter.getTo().isPresent() || value.compareTo(filter.getTo().get()) < 0)
+                    && (!filter.getIn().isPresent() || filter.getIn().get().contains(value)));
+        }
+        return filters;
+    }
+
+    static ZoneId parseZone(final String value)
+    {
+        try {
+            return ZoneId.of(value);
+        }
+        catch (final DateTimeException e) {
+            throw new ConfigException("Unsupported time_zone of path_prefix_template: '" + value + "'");
+        }
     }
 
     Date parseDate(final String value) {
@@ -332,8 +674,11 @@ public class S3FileInputPlugin
 
         private final AmazonS3 client;
         private final GetObjectRequest request;
-        private final long contentLength;
+        private final long rangeStart;
+        private final long rangeEnd;
         private final RetryExecutor retryExec;
+        private long minReadThroughput = 0;
+        private int minReadThroughputWindowSeconds = 0;
 
         public S3InputStreamReopener(AmazonS3 client, GetObjectRequest request, long contentLength)
         {
@@ -341,27 +686,51 @@ public class S3FileInputPlugin
         }
 
         public S3InputStreamReopener(AmazonS3 client, GetObjectRequest request, long contentLength, RetryExecutor retryExec)
+        {
+            this(client, request, 0, contentLength, retryExec);
+        }
+
+        // reopens a stream that started at rangeStart and ends at rangeEnd (exclusive) of the object
+        public S3InputStreamReopener(AmazonS3 client, GetObjectRequest request, long rangeStart, long rangeEnd, RetryExecutor retryExec)
         {
             this.client = client;
             this.request = request;
-            this.contentLength = contentLength;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
             this.retryExec = retryExec;
         }
 
+        // reopened streams are also aborted if they are slower than the throughput
+        S3InputStreamReopener withMinReadThroughput(final long bytesPerSecond, final int windowSeconds)
+        {
+            this.minReadThroughput = bytesPerSecond;
+            this.minReadThroughputWindowSeconds = windowSeconds;
+            return this;
+        }
+
         @Override
         public InputStream reopen(final long offset, final Exception closedCause) throws IOException
         {
             log.warn(String.format("S3 read failed. Retrying GET request with %,d bytes offset", offset), closedCause);
-            request.setRange(offset, contentLength - 1);  // [first, last]
+            request.setRange(rangeStart + offset, rangeEnd - 1);  // [first, last]
 
-            return new DefaultRetryable<S3ObjectInputStream>(String.format("Getting object '%s'", request.getKey())) {
+            final S3ObjectInputStream reopened = new DefaultRetryable<S3ObjectInputStream>(String.format("Getting object '%s'", request.getKey())) {
                 @Override
                 public S3ObjectInputStream call()
                 {
                     return client.getObject(request).getObjectContent();
                 }
             }.executeWithCheckedException(retryExec, IOException.class);
+            return watchThroughput(reopened, minReadThroughput, minReadThroughputWindowSeconds);
+        }
+    }
+
+    static InputStream watchThroughput(final S3ObjectInputStream in, final long minBytesPerSecond, final int windowSeconds)
+    {
+        if (minBytesPerSecond <= 0) {
+            return in;
         }
+        return new ThroughputWatchdogInputStream(in, in::abort, minBytesPerSecond, windowSeconds * 1000L);
     }
 
     public class S3FileInput
@@ -385,6 +754,7 @@ public class S3FileInputPlugin
         @Override
         public void close()
         {
+            super.close();
         }
     }
 
@@ -393,38 +763,147 @@ public class S3FileInputPlugin
         if (task.getEndModifiedTime().isPresent()) {
             throw new ConfigException("'__end_modified_time' must not be set.");
         }
+        if (task.getStreamingSession().isPresent()) {
+            throw new ConfigException("'__streaming_session' must not be set.");
+        }
     }
 
     // TODO create single-file InputStreamFileInput utility
     private class SingleFileProvider
             implements InputStreamFileInput.Provider
     {
+        private final S3ClientCache.Lease clientLease;
         private AmazonS3 client;
         private final String bucket;
         private final Iterator<String> iterator;
+        private final Iterator<FileList.Entry> entries;
+        private final StreamingFileQueue streamingQueue;
         private final RetryExecutor retryExec;
+        private final ObjectPrefetcher prefetcher;
+        private final long prefetchBufferSize;
+        private final int downloadConcurrency;
+        private final int downloadPartSize;
+        private final ExecutorService downloadExecutor;
+        private final SharedDownloadExecutor.Lease sharedExecutor;
+        private final long minReadThroughput;
+        private final int minReadThroughputWindowSeconds;
+        private final SharedHedgedRequester.Lease hedgerLease;
+        private final HedgedRequester hedger;
 
         public SingleFileProvider(PluginTask task, int taskIndex)
         {
-            this.client = newS3Client(task);
+            this.clientLease = leaseS3Client(task);
+            this.client = clientLease.getClient();
             this.bucket = task.getBucket();
-            this.iterator = task.getFiles().get(taskIndex).iterator();
+            if (task.getStreamingSession().isPresent()) {
+                this.streamingQueue = StreamingFileQueue.lookup(task.getStreamingSession().get()).orElseThrow(() -> new ConfigException(
+                        "streaming_tasks requires an executor which runs tasks in the same JVM as the transaction, like the local executor"));
+                this.iterator = Collections.emptyIterator();
+                this.entries = Collections.emptyIterator();
+            }
+            else {
+                this.streamingQueue = null;
+                this.iterator = task.getFiles().get(taskIndex).iterator();
+                this.entries = task.getFiles().getEntries(taskIndex).iterator();
+            }
             this.retryExec = retryExecutorFrom(task);
+            this.prefetchBufferSize = task.getPrefetchBufferSize();
+            this.downloadConcurrency = task.getDownloadConcurrency();
+            this.downloadPartSize = (int) task.getDownloadPartSize();
+            this.minReadThroughput = task.getMinReadThroughput();
+            this.minReadThroughputWindowSeconds = task.getMinReadThroughputWindowSeconds();
+            if (task.getSharedDownloadThreads() > 0 && (task.getPrefetchDepth() > 0 || downloadConcurrency > 1)) {
+                this.sharedExecutor = SharedDownloadExecutor.getInstance().acquire(task.getSharedDownloadThreads());
+                this.prefetcher = task.getPrefetchDepth() > 0 ? new ObjectPrefetcher(task.getPrefetchDepth(), sharedExecutor.getExecutor()) : null;
+                this.downloadExecutor = downloadConcurrency > 1 ? sharedExecutor.getExecutor() : null;
+            }
+            else {
+                this.sharedExecutor = null;
+                this.prefetcher = task.getPrefetchDepth() > 0 ? new ObjectPrefetcher(task.getPrefetchDepth()) : null;
+                this.downloadExecutor = downloadConcurrency > 1
+                        ? Executors.newFixedThreadPool(downloadConcurrency, new DaemonThreadFactory("embulk-input-s3-download-"))
+                        : null;
+            }
+            if (task.getHedgedGet().isPresent()) {
+                // hedged requests don't use the shared download threads, which may be all waiting for them.
+                // More threads than connections of the client would only wait for a connection.
+                final HedgedGetConfig hedgedGet = task.getHedgedGet().get();
+                this.hedgerLease = SharedHedgedRequester.getInstance().acquire(hedgedGet.getPercentile(),
+                        hedgedGet.getInitialDelayMillis(), hedgedGet.getMaxRatio(), getMaxConnections(task));
+                this.hedger = hedgerLease.getRequester();
+            }
+            else {
+                this.hedgerLease = null;
+                this.hedger = null;
+            }
         }
 
         @Override
         public InputStreamFileInput.InputStreamWithHints openNextWithHints() throws IOException
         {
+            if (prefetcher == null) {
+                final StreamingFileQueue.Item next = nextFile();
+                if (next == null) {
+                    return null;
+                }
+                return open(next.getKey(), next.getEntry(), false);
+            }
+            while (!prefetcher.isFull()) {
+                // waits for listing only if no objects are opened ahead, so that they're read while files are listed
+                final StreamingFileQueue.Item next = prefetcher.isEmpty() ? nextFile() : pollNextFile();
+                if (next == null) {
+                    break;
+                }
+                prefetcher.add(() -> open(next.getKey(), next.getEntry(), true));
+            }
+            return prefetcher.poll();
+        }
+
+        // returns null if no files are left for this task
+        private StreamingFileQueue.Item nextFile() throws IOException
+        {
+            if (streamingQueue != null) {
+                return streamingQueue.take();
+            }
             if (!iterator.hasNext()) {
                 return null;
             }
-            final String key = iterator.next();
+            return new StreamingFileQueue.Item(iterator.next(), entries.next());
+        }
+
+        // returns null if no files are listed yet, or no files are left for this task
+        private StreamingFileQueue.Item pollNextFile() throws IOException
+        {
+            if (streamingQueue != null) {
+                return streamingQueue.poll();
+            }
+            return nextFile();
+        }
+
+        private InputStreamFileInput.InputStreamWithHints open(final String key, final FileList.Entry entry, final boolean prefetch) throws IOException
+        {
+            if (entry.hasRange()) {
+                logger.info("Open S3Object with bucket [{}], key [{}], with size [{}], range [{}, {})",
+                        bucket, key, entry.getSize(), entry.getRangeStart(), entry.getRangeEnd());
+                InputStream inputStream = new LineAlignedRangeInputStream(
+                        (first, last) -> openRangeInParallel(key, first, last), entry.getRangeStart(), entry.getRangeEnd(), entry.getSize());
+                return withHints(inputStream, key);
+            }
+            if (downloadExecutor != null && entry.getSize() > downloadPartSize) {
+                logger.info("Open S3Object with bucket [{}], key [{}], with size [{}]", bucket, key, entry.getSize());
+                InputStream inputStream = new ParallelRangeInputStream(
+                        (first, last) -> openRange(key, first, last), 0, entry.getSize(), downloadPartSize, downloadConcurrency, downloadExecutor);
+                return withHints(inputStream, key);
+            }
             final GetObjectRequest request = new GetObjectRequest(bucket, key);
 
             S3Object object = new DefaultRetryable<S3Object>(String.format("Getting object '%s'", request.getKey())) {
                 @Override
-                public S3Object call()
+                public S3Object call() throws Exception
                 {
+                    if (hedger != null) {
+                        return hedger.call(() -> client.getObject(request), SingleFileProvider.this::discard);
+                    }
                     return client.getObject(request);
                 }
             }.executeWithCheckedException(retryExec, IOException.class);
@@ -433,16 +912,131 @@ public class S3FileInputPlugin
             // Some plugin users are parsing this output to get file list.
             // Keep it for now but might be removed in the future.
             logger.info("Open S3Object with bucket [{}], key [{}], with size [{}]", bucket, key, objectSize);
-            InputStream inputStream = new ResumableInputStream(object.getObjectContent(), new S3InputStreamReopener(client, request, objectSize, retryExec));
-            return new InputStreamFileInput.InputStreamWithHints(inputStream, String.format("s3://%s/%s", bucket, key));
+            InputStream inputStream = new ResumableInputStream(watchThroughput(object.getObjectContent()),
+                    new S3InputStreamReopener(client, request, objectSize, retryExec).withMinReadThroughput(minReadThroughput, minReadThroughputWindowSeconds));
+            if (prefetch && objectSize <= prefetchBufferSize) {
+                // small objects are downloaded while the previous ones are read
+                inputStream = new ByteArrayInputStream(readFully(inputStream, (int) objectSize));
+            }
+            return withHints(inputStream, key);
+        }
+
+        // closes the response of a hedged request which lost without reading the body
+        private void discard(final S3Object object)
+        {
+            object.getObjectContent().abort();
+            try {
+                object.close();
+            }
+            catch (final IOException ex) {
+                logger.debug("Failed to close an unused response of a hedged request", ex);
+            }
+        }
+
+        private InputStream watchThroughput(final S3ObjectInputStream in)
+        {
+            return S3FileInputPlugin.watchThroughput(in, minReadThroughput, minReadThroughputWindowSeconds);
+        }
+
+        // buffers are filled by reads from the stream directly
+        private InputStreamFileInput.InputStreamWithHints withHints(final InputStream inputStream, final String key)
+        {
+            return new InputStreamFileInput.InputStreamWithHints(new FullReadInputStream(inputStream), String.format("s3://%s/%s", bucket, key));
+        }
+
+        private byte[] readFully(final InputStream in, final int size) throws IOException
+        {
+            try (InputStream closing = in) {
+                final byte[] bytes = new byte[size];
+                int offset = 0;
+                while (offset < size) {
+                    final int n = closing.read(bytes, offset, size - offset);
+                    if (n < 0) {
+                        throw new EOFException(String.format("Object is shorter than %,d bytes", size));
+                    }
+                    offset += n;
+                }
+                return bytes;
+            }
+        }
+
+        private InputStream openRangeInParallel(final String key, final long first, final long last) throws IOException
+        {
+            if (downloadExecutor != null && last - first + 1 > downloadPartSize) {
+                return new ParallelRangeInputStream(
+                        (partFirst, partLast) -> openRange(key, partFirst, partLast), first, last + 1, downloadPartSize, downloadConcurrency, downloadExecutor);
+            }
+            return openRange(key, first, last);
+        }
+
+        private InputStream openRange(final String key, final long first, final long last) throws IOException
+        {
+            final GetObjectRequest request = new GetObjectRequest(bucket, key).withRange(first, last);
+
+            S3Object object = new DefaultRetryable<S3Object>(String.format("Getting object '%s'", request.getKey())) {
+                @Override
+                public S3Object call()
+                {
+                    return client.getObject(request);
+                }
+            }.executeWithCheckedException(retryExec, IOException.class);
+
+            return new ResumableInputStream(watchThroughput(object.getObjectContent()),
+                    new S3InputStreamReopener(client, request, first, last + 1, retryExec).withMinReadThroughput(minReadThroughput, minReadThroughputWindowSeconds));
         }
 
         @Override
         public void close()
         {
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
+            if (sharedExecutor != null) {
+                sharedExecutor.close();
+            }
+            else if (downloadExecutor != null) {
+                downloadExecutor.shutdown();
+            }
+            if (hedgerLease != null) {
+                hedgerLease.close();
+            }
+            clientLease.close();
         }
     }
 
+    private S3ClientCache.Lease leaseS3Client(final PluginTask task)
+    {
+        return S3ClientCache.getInstance().acquire(clientCacheKey(task), () -> newS3Client(task));
+    }
+
+    // all configurations used to build a client by newS3Client
+    private static List<Object> clientCacheKey(final PluginTask task)
+    {
+        return Arrays.asList(
+                task.getEndpoint(),
+                task.getRegion(),
+                task.getHttpProxy().map(proxy -> Arrays.asList(
+                        proxy.getHost(), proxy.getPort(), proxy.getHttps(), proxy.getUser(), proxy.getPassword())),
+                getMaxConnections(task),
+                task.getClientConfig().map(config -> Arrays.asList(
+                        config.getConnectionTimeoutMillis(), config.getSocketTimeoutMillis(),
+                        config.getConnectionTtlMillis(), config.getConnectionMaxIdleMillis(), config.getTcpKeepAlive(),
+                        config.getSocketSendBufferSizeHint(), config.getSocketReceiveBufferSizeHint(),
+                        config.getUseExpectContinue(), config.getUseGzip())),
+                task.getAuthMethod(),
+                task.getAccessKeyId(),
+                task.getSecretAccessKey(),
+                task.getSessionToken(),
+                task.getProfileFile(),
+                task.getProfileName(),
+                task.getAccountId(),
+                task.getRoleName(),
+                task.getExternalId(),
+                task.getDurationInSeconds(),
+                task.getArnPartition(),
+                task.getSessionName());
+    }
+
     private AmazonS3 newS3Client(final PluginTask task)
     {
         Optional<String> endpoint = task.getEndpoint();
@@ -494,5 +1088,8 @@ public class S3FileInputPlugin
 
     private static final String FULL_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
 
+    // the number of files which can be listed ahead of streaming tasks
+    private static final int STREAMING_QUEUE_CAPACITY = 10000;
+
     private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.List;
+
+/**
+ * Cuts files in order into a task each time the cost of the task reaches {@code min_task_size}.
+ */
+class SequentialTaskSplitter
+        implements TaskSplitter
+{
+    private final long minTaskSize;
+    private final long costPerFile;
+
+    SequentialTaskSplitter(long minTaskSize, long costPerFile)
+    {
+        this.minTaskSize = minTaskSize;
+        this.costPerFile = costPerFile;
+    }
+
+    @Override
+    public PackedEntries split(List<FileList.Entry> entries)
+    {
+        // entries are appended directly so that no Entry objects are kept for tasks
+        PackedEntries.Builder tasks = new PackedEntries.Builder();
+        long currentTaskSize = 0;
+        for (FileList.Entry entry : entries) {
+            tasks.add(entry);
+            currentTaskSize += entry.getLength() + costPerFile;
+            if (currentTaskSize >= minTaskSize) {
+                tasks.endTask();
+                currentTaskSize = 0;
+            }
+        }
+        return tasks.build();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shares pools of threads in a JVM among tasks to open objects ahead and to download parts of objects.
+ *
+ * Tasks lease a pool instead of creating threads of their own, so that the number of threads blocked by
+ * in-flight GET requests is bounded by the size of the pool however many tasks run in parallel.
+ * A pool is shut down when no task leases it.
+ */
+class SharedDownloadExecutor
+{
+    private static final SharedDownloadExecutor INSTANCE = new SharedDownloadExecutor();
+
+    private final Map<Integer, SharedPool> pools = new HashMap<>();
+
+    static SharedDownloadExecutor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Leases the pool of the number of threads.
+     */
+    synchronized Lease acquire(final int threads)
+    {
+        SharedPool pool = pools.get(threads);
+        if (pool == null) {
+            pool = new SharedPool(threads, Executors.newFixedThreadPool(threads, new DaemonThreadFactory("embulk-input-s3-shared-download-")));
+            pools.put(threads, pool);
+        }
+        pool.references++;
+        return new Lease(pool);
+    }
+
+    synchronized int size()
+    {
+        return pools.size();
+    }
+
+    private synchronized void release(final SharedPool pool)
+    {
+        pool.references--;
+        if (pool.references == 0) {
+            pools.remove(pool.threads);
+            // tasks submitted by the last task finish, since the task waits for them or ignores their results
+            pool.executor.shutdown();
+        }
+    }
+
+    class Lease
+            implements AutoCloseable
+    {
+        private final ExecutorService executor;
+        private SharedPool pool;
+
+        private Lease(final SharedPool pool)
+        {
+            this.executor = pool.executor;
+            this.pool = pool;
+        }
+
+        ExecutorService getExecutor()
+        {
+            return executor;
+        }
+
+        @Override
+        public void close()
+        {
+            if (pool != null) {
+                release(pool);
+                pool = null;
+            }
+        }
+    }
+
+    private static class SharedPool
+    {
+        private final int threads;
+        private final ExecutorService executor;
+        private int references;
+
+        SharedPool(final int threads, final ExecutorService executor)
+        {
+            this.threads = threads;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares hedged requesters in a JVM among tasks which have the same hedged_get configuration.
+ *
+ * Latencies of all tasks adapt the delay of hedged requests, and the ratio of hedged requests is limited in the JVM
+ * instead of in each task. Requests are sent by a pool of a bounded number of threads, which are stopped while idle.
+ * A requester is shut down when no task leases it.
+ */
+class SharedHedgedRequester
+{
+    private static final SharedHedgedRequester INSTANCE = new SharedHedgedRequester();
+
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    private final Map<List<Object>, SharedRequester> requesters = new HashMap<>();
+
+    static SharedHedgedRequester getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Leases the requester of the configuration, whose requests are sent by up to {@code threads} threads.
+     */
+    synchronized Lease acquire(final double percentile, final long initialDelayMillis, final double maxRatio, final int threads)
+    {
+        final List<Object> key = Arrays.asList(percentile, initialDelayMillis, maxRatio, threads);
+        SharedRequester shared = requesters.get(key);
+        if (shared == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new DaemonThreadFactory("embulk-input-s3-hedge-"));
+            executor.allowCoreThreadTimeOut(true);
+            shared = new SharedRequester(key, executor, new HedgedRequester(executor, percentile, initialDelayMillis, maxRatio));
+            requesters.put(key, shared);
+        }
+        shared.references++;
+        return new Lease(shared);
+    }
+
+    synchronized int size()
+    {
+        return requesters.size();
+    }
+
+    private synchronized void release(final SharedRequester shared)
+    {
+        shared.references--;
+        if (shared.references == 0) {
+            requesters.remove(shared.key);
+            // requests sent by the last task finish, since the task waits for them or discards their results
+            shared.executor.shutdown();
+        }
+    }
+
+    class Lease
+            implements AutoCloseable
+    {
+        private final HedgedRequester requester;
+        private SharedRequester shared;
+
+        private Lease(final SharedRequester shared)
+        {
+            this.requester = shared.requester;
+            this.shared = shared;
+        }
+
+        HedgedRequester getRequester()
+        {
+            return requester;
+        }
+
+        @Override
+        public void close()
+        {
+            if (shared != null) {
+                release(shared);
+                shared = null;
+            }
+        }
+    }
+
+    private static class SharedRequester
+    {
+        private final List<Object> key;
+        private final ThreadPoolExecutor executor;
+        private final HedgedRequester requester;
+        private int references;
+
+        SharedRequester(final List<Object> key, final ThreadPoolExecutor executor, final HedgedRequester requester)
+        {
+            this.key = key;
+            this.executor = executor;
+            this.requester = requester;
+        }
+    }
+}
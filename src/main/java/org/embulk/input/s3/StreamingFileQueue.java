@@ -0,0 +1,168 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes files from the listing thread of the transaction to tasks while files are still being listed.
+ *
+ * Queues are registered in the JVM by the id of the transaction, so that tasks find the queue from their task source.
+ * It works only with an executor which runs tasks in the JVM of the transaction, like the local executor.
+ */
+class StreamingFileQueue
+        implements AutoCloseable
+{
+    private static final Map<String, StreamingFileQueue> QUEUES = new ConcurrentHashMap<>();
+
+    // taken by a task to notice the end, and put back for other tasks
+    private static final Item END = new Item(null, null);
+
+    private final String id;
+    private final BlockingQueue<Item> queue;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    private StreamingFileQueue(final String id, final int capacity)
+    {
+        this.id = id;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    static StreamingFileQueue register(final String id, final int capacity)
+    {
+        final StreamingFileQueue queue = new StreamingFileQueue(id, capacity);
+        if (QUEUES.putIfAbsent(id, queue) != null) {
+            throw new IllegalStateException("Streaming file queue " + id + " is already registered");
+        }
+        return queue;
+    }
+
+    static Optional<StreamingFileQueue> lookup(final String id)
+    {
+        return Optional.ofNullable(QUEUES.get(id));
+    }
+
+    /**
+     * Adds a file. It blocks while the queue is full, so that listing doesn't run far ahead of tasks.
+     */
+    void put(final String key, final long size)
+    {
+        putItem(new Item(key, new FileList.Entry(0, size)));
+    }
+
+    /**
+     * Tells tasks that no more files are added. Tasks fail with the failure if it is not null.
+     */
+    void finish(final Throwable failure)
+    {
+        this.failure = failure;
+        putItem(END);
+    }
+
+    /**
+     * Returns the next file, or null if all files are taken.
+     */
+    Item take() throws IOException
+    {
+        final Item item;
+        try {
+            item = queue.take();
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return unlessEnd(item);
+    }
+
+    /**
+     * Returns the next file if it's already listed, or null if no files are listed yet or all files are taken.
+     */
+    Item poll() throws IOException
+    {
+        final Item item = queue.poll();
+        return item != null ? unlessEnd(item) : null;
+    }
+
+    /**
+     * Unregisters this queue, and makes the listing thread blocked by {@link #put(String, long)} fail.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        QUEUES.remove(id, this);
+    }
+
+    private Item unlessEnd(final Item item) throws IOException
+    {
+        if (item != END) {
+            return item;
+        }
+        // there is room since no files are added after the end
+        queue.offer(END);
+        if (failure != null) {
+            throw new IOException("Failed to list files", failure);
+        }
+        return null;
+    }
+
+    private void putItem(final Item item)
+    {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new IllegalStateException("Streaming file queue " + id + " is closed");
+                }
+            }
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static class Item
+    {
+        private final String key;
+        private final FileList.Entry entry;
+
+        Item(final String key, final FileList.Entry entry)
+        {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        String getKey()
+        {
+            return key;
+        }
+
+        FileList.Entry getEntry()
+        {
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.util.List;
+
+/**
+ * Splits files into tasks.
+ *
+ * The cost of a file is its bytesize plus {@code cost_per_file}, which represents the overhead of a file such as
+ * the latency of a request in bytes which could be read in the time.
+ */
+interface TaskSplitter
+{
+    /**
+     * @param entries files in the order of indexes
+     * @return tasks. Files in a task are in the order of indexes.
+     */
+    PackedEntries split(List<FileList.Entry> entries);
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts a connection whose throughput drops below a floor, so that the read fails and the stream is reopened
+ * from the current offset by ResumableInputStream, instead of waiting for the socket timeout.
+ *
+ * The throughput is measured only over time spent in read(), so that a slow consumer doesn't make a connection
+ * look slow. It is checked in background since a read can block for a long time on a stalled connection.
+ */
+class ThroughputWatchdogInputStream
+        extends FilterInputStream
+{
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("embulk-input-s3-watchdog-"));
+
+    private final Runnable aborter;
+    private final long minBytesPerSecond;
+    private final long windowNanos;
+    private final ScheduledFuture<?> check;
+
+    // bytes read and nanoseconds spent in read() in the current window
+    private long windowBytes;
+    private long windowReadNanos;
+    // when the current read started, or 0 if not reading
+    private long readStartNanos;
+    private volatile boolean slow;
+
+    /**
+     * @param aborter aborts the connection so that a blocked read fails
+     * @param windowMillis the throughput is checked once reads take this long in total
+     */
+    ThroughputWatchdogInputStream(final InputStream in, final Runnable aborter, final long minBytesPerSecond, final long windowMillis)
+    {
+        super(in);
+        this.aborter = aborter;
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        final long period = Math.max(10, Math.min(1000, windowMillis / 4));
+        this.check = SCHEDULER.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final byte[] b = new byte[1];
+        int n;
+        do {
+            n = read(b, 0, 1);
+        } while (n == 0);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (slow) {
+            throw slowException(null);
+        }
+        startRead();
+        int n = 0;
+        try {
+            n = in.read(b, off, len);
+        }
+        catch (final IOException | RuntimeException ex) {
+            if (slow) {
+                throw slowException(ex);
+            }
+            throw ex;
+        }
+        finally {
+            endRead(n);
+        }
+        if (slow) {
+            throw slowException(null);
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        check.cancel(false);
+        super.close();
+    }
+
+    boolean isSlow()
+    {
+        return slow;
+    }
+
+    private synchronized void startRead()
+    {
+        readStartNanos = System.nanoTime();
+    }
+
+    private synchronized void endRead(final int n)
+    {
+        windowReadNanos += System.nanoTime() - readStartNanos;
+        readStartNanos = 0;
+        if (n > 0) {
+            windowBytes += n;
+        }
+    }
+
+    private void check()
+    {
+        synchronized (this) {
+            if (slow) {
+                // already aborted
+                return;
+            }
+            final long now = System.nanoTime();
+            final long readNanos = windowReadNanos + (readStartNanos != 0 ? now - readStartNanos : 0);
+            if (readNanos < windowNanos) {
+                return;
+            }
+            if (windowBytes * 1_000_000_000.0 / readNanos >= minBytesPerSecond) {
+                // starts the next window
+                windowBytes = 0;
+                windowReadNanos = 0;
+                if (readStartNanos != 0) {
+                    readStartNanos = now;
+                }
+                return;
+            }
+            slow = true;
+        }
+        aborter.run();
+    }
+
+    private IOException slowException(final Exception cause)
+    {
+        return new IOException(String.format("Read slower than %,d bytes/s, aborted the connection to reopen it", minBytesPerSecond), cause);
+    }
+}
@@ -20,6 +20,14 @@ import com.amazonaws.services.s3.AmazonS3;
 import org.embulk.input.s3.FileList;
 import org.embulk.util.retryhelper.RetryExecutor;
 
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
 public abstract class S3FileExplorer
 {
     protected String bucketName;
@@ -34,4 +42,69 @@ public abstract class S3FileExplorer
     }
 
     public abstract void addToBuilder(FileList.Builder builder);
+
+    /**
+     * Lists units into partitions of the builder by up to {@code parallelism} tasks at once.
+     *
+     * A partition is created only when its unit is submitted, in the order of the units, so that files are merged
+     * in that order and partitions of units not listed yet hold no memory. A partition is finished when its unit
+     * is listed, so that it's merged as soon as the partitions before it are merged.
+     */
+    protected static <T> void listInPartitions(final FileList.Builder builder, final ExecutorService executor, final int parallelism,
+            final List<T> units, final BiConsumer<T, FileList.Builder.Partition> lister)
+    {
+        final CompletionService<Void> running = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        for (final T unit : units) {
+            if (!builder.needsMore()) {
+                break;
+            }
+            if (inFlight >= parallelism) {
+                getResult(takeCompleted(running));
+                inFlight--;
+            }
+            final FileList.Builder.Partition partition = builder.newPartition();
+            running.submit(() -> {
+                try {
+                    lister.accept(unit, partition);
+                }
+                finally {
+                    partition.finish();
+                }
+                return null;
+            });
+            inFlight++;
+        }
+        for (; inFlight > 0; inFlight--) {
+            getResult(takeCompleted(running));
+        }
+    }
+
+    protected static <T> T getResult(final Future<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static Future<Void> takeCompleted(final CompletionService<Void> running)
+    {
+        try {
+            return running.take();
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.embulk.util.retryhelper.RetryExecutor;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Lists files laid out in Hive style partitions like {@code path_prefix/dt=2019-01-01/hour=00/part-0.gz}.
+ *
+ * Sub-prefixes are walked with the delimiter "/" until all partition keys with filters appear in them. A sub-prefix
+ * whose partition value doesn't pass the filter of its key is pruned without listing keys under it. The remaining
+ * sub-prefixes are listed by {@code listing_parallelism} threads in the order of keys.
+ */
+public class S3HivePartitionFileExplorer extends S3NameOrderPrefixFileExplorer
+{
+    private static final char DELIMITER = '/';
+
+    private final Map<String, Predicate<String>> partitionFilters;
+
+    public S3HivePartitionFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor,
+            final String pathPrefix, final boolean skipGlacierObjects, final String lastPath, final int listingParallelism,
+            final Map<String, Predicate<String>> partitionFilters)
+    {
+        super(bucketName, s3Client, retryExecutor, pathPrefix, skipGlacierObjects, lastPath, listingParallelism);
+        this.partitionFilters = partitionFilters;
+    }
+
+    @Override
+    protected boolean isPruned(final String prefix)
+    {
+        for (final String segment : completeSegments(prefix)) {
+            final int separator = segment.indexOf('=');
+            if (separator > 0) {
+                final Predicate<String> filter = partitionFilters.get(segment.substring(0, separator));
+                if (filter != null && !filter.test(segment.substring(separator + 1))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean needsDescending(final String prefix)
+    {
+        final Set<String> keys = new HashSet<>();
+        for (final String segment : completeSegments(prefix)) {
+            final int separator = segment.indexOf('=');
+            if (separator > 0) {
+                keys.add(segment.substring(0, separator));
+            }
+        }
+        return !keys.containsAll(partitionFilters.keySet());
+    }
+
+    // segments of the prefix which are followed by the delimiter
+    private static String[] completeSegments(final String prefix)
+    {
+        final int end = prefix.lastIndexOf(DELIMITER);
+        if (end < 0) {
+            return new String[0];
+        }
+        return prefix.substring(0, end).split(String.valueOf(DELIMITER), -1);
+    }
+}
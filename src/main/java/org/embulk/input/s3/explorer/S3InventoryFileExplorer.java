@@ -0,0 +1,414 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.config.ConfigException;
+import org.embulk.input.s3.DaemonThreadFactory;
+import org.embulk.input.s3.DefaultRetryable;
+import org.embulk.input.s3.FileList;
+import org.embulk.util.retryhelper.RetryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lists files from an S3 Inventory report instead of LIST requests.
+ *
+ * Inventory files listed in the manifest.json are read in parallel, and filtered with the same conditions as the
+ * prefix explorers. Files of each inventory file are sorted and compressed into a FileList of its own, and then
+ * merged into the builder in the order of keys, so that not all the keys are held as objects. Only the CSV format
+ * is supported.
+ *
+ * The report is a snapshot at the creation time in the manifest, so files modified after it are left to the next
+ * report if the modified time is used.
+ */
+public class S3InventoryFileExplorer extends S3FileExplorer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3InventoryFileExplorer.class);
+
+    private static final String LAST_MODIFIED_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private final String inventoryBucket;
+    private final String manifestKey;
+    private final String pathPrefix;
+    private final boolean skipGlacierObjects;
+    private final String lastPath;
+    private final Optional<Date> from;
+    private final boolean useModifiedTime;
+    private final int parallelism;
+
+    // the creation time of the report, read from the manifest
+    private Date creationTime;
+
+    /**
+     * @param lastPath only keys after this are listed if not null
+     * @param from only objects modified at or after this are listed if present
+     * @param useModifiedTime only objects modified before the creation time of the report are listed if true
+     */
+    public S3InventoryFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor,
+            final String inventoryBucket, final String manifestKey, final String pathPrefix, final boolean skipGlacierObjects,
+            final String lastPath, final Optional<Date> from, final boolean useModifiedTime, final int parallelism)
+    {
+        super(bucketName, s3Client, retryExecutor);
+        this.inventoryBucket = inventoryBucket;
+        this.manifestKey = manifestKey;
+        this.pathPrefix = pathPrefix;
+        this.skipGlacierObjects = skipGlacierObjects;
+        this.lastPath = lastPath;
+        this.from = from;
+        this.useModifiedTime = useModifiedTime;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void addToBuilder(final FileList.Builder builder)
+    {
+        final JsonNode manifest = readManifest();
+        final Schema schema = new Schema(manifest.path("fileSchema").asText());
+        creationTime = parseCreationTime(manifest);
+        final List<String> inventoryFiles = new ArrayList<>();
+        for (final JsonNode file : manifest.path("files")) {
+            inventoryFiles.add(file.path("key").asText());
+        }
+        LOGGER.info("Reading {} inventory files of s3://{}/{} created at {}", inventoryFiles.size(), inventoryBucket, manifestKey, creationTime);
+
+        final List<FileList> runs = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new DaemonThreadFactory("embulk-input-s3-inventory-"));
+        try {
+            final List<Future<FileList>> futures = new ArrayList<>();
+            for (final String inventoryFile : inventoryFiles) {
+                futures.add(executor.submit(() -> toSortedRun(readInventoryFile(inventoryFile, schema))));
+            }
+            for (final Future<FileList> future : futures) {
+                runs.add(getResult(future));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        mergeRuns(runs, builder);
+    }
+
+    /**
+     * Returns the creation time of the report, which is the upper bound of the modified time of listed files.
+     * It's available after {@link #addToBuilder(FileList.Builder)}.
+     */
+    public Date getCreationTime()
+    {
+        return creationTime;
+    }
+
+    // compresses files of an inventory file in the order of keys, into a single task
+    private static FileList toSortedRun(final List<InventoryObject> objects)
+    {
+        objects.sort(Comparator.comparing(InventoryObject::getKey));
+        final FileList.Builder run = new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE);
+        for (final InventoryObject object : objects) {
+            run.add(object.key, object.size);
+        }
+        return run.build();
+    }
+
+    private static void mergeRuns(final List<FileList> runs, final FileList.Builder builder)
+    {
+        final PriorityQueue<RunCursor> cursors = new PriorityQueue<>(Comparator.comparing(RunCursor::getKey));
+        for (final FileList run : runs) {
+            if (run.getTaskCount() > 0) {
+                final RunCursor cursor = new RunCursor(run);
+                if (cursor.hasNext()) {
+                    cursor.next();
+                    cursors.add(cursor);
+                }
+            }
+        }
+        while (!cursors.isEmpty()) {
+            final RunCursor cursor = cursors.poll();
+            builder.add(cursor.getKey(), cursor.getSize());
+            if (!builder.needsMore()) {
+                LOGGER.warn("Too many files matched, stop listing file");
+                return;
+            }
+            if (cursor.hasNext()) {
+                cursor.next();
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    private JsonNode readManifest()
+    {
+        final JsonNode manifest = new DefaultRetryable<JsonNode>(String.format("Getting inventory manifest '%s'", manifestKey)) {
+            @Override
+            public JsonNode call() throws IOException
+            {
+                try (S3Object object = s3Client.getObject(inventoryBucket, manifestKey)) {
+                    return new ObjectMapper().readTree(object.getObjectContent());
+                }
+            }
+        }.executeWith(retryExecutor);
+
+        final String format = manifest.path("fileFormat").asText();
+        if (!"CSV".equalsIgnoreCase(format)) {
+            throw new ConfigException(String.format("Inventory format '%s' is not supported. Configure the inventory with CSV format.", format));
+        }
+        final String sourceBucket = manifest.path("sourceBucket").asText();
+        if (!bucketName.equals(sourceBucket)) {
+            throw new ConfigException(String.format("Inventory '%s' is of bucket '%s', not '%s'", manifestKey, sourceBucket, bucketName));
+        }
+        return manifest;
+    }
+
+    private Date parseCreationTime(final JsonNode manifest)
+    {
+        final String creationTimestamp = manifest.path("creationTimestamp").asText();
+        if (creationTimestamp.isEmpty()) {
+            if (useModifiedTime) {
+                throw new ConfigException(String.format("Inventory manifest '%s' doesn't have creationTimestamp", manifestKey));
+            }
+            return null;
+        }
+        return new Date(Long.parseLong(creationTimestamp));
+    }
+
+    private List<InventoryObject> readInventoryFile(final String inventoryFile, final Schema schema)
+    {
+        return new DefaultRetryable<List<InventoryObject>>(String.format("Reading inventory file '%s'", inventoryFile)) {
+            @Override
+            public List<InventoryObject> call() throws IOException
+            {
+                try (S3Object object = s3Client.getObject(inventoryBucket, inventoryFile)) {
+                    InputStream in = object.getObjectContent();
+                    if (inventoryFile.endsWith(".gz")) {
+                        in = new GZIPInputStream(in);
+                    }
+                    return readInventoryObjects(in, schema);
+                }
+            }
+        }.executeWith(retryExecutor);
+    }
+
+    List<InventoryObject> readInventoryObjects(final InputStream in, final Schema schema) throws IOException
+    {
+        final List<InventoryObject> objects = new ArrayList<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(LAST_MODIFIED_DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final List<String> row = parseCsvLine(line);
+            if ("true".equals(schema.get(row, schema.isDeleteMarker)) || "false".equals(schema.get(row, schema.isLatest))) {
+                continue;
+            }
+            final String key = URLDecoder.decode(schema.get(row, schema.key), "UTF-8");
+            if (!key.startsWith(pathPrefix) || (lastPath != null && key.compareTo(lastPath) <= 0)) {
+                continue;
+            }
+            final String size = schema.get(row, schema.size);
+            if (size == null || size.isEmpty() || Long.parseLong(size) <= 0) {
+                continue;
+            }
+            if (useModifiedTime) {
+                final Date lastModified = parseDate(dateFormat, schema.get(row, schema.lastModifiedDate));
+                if ((from.isPresent() && lastModified.before(from.get())) || !lastModified.before(creationTime)) {
+                    continue;
+                }
+            }
+            if (isGlacier(schema.get(row, schema.storageClass))) {
+                if (skipGlacierObjects) {
+                    LOGGER.warn("Skipped \"s3://{}/{}\" that stored at Glacier.", bucketName, key);
+                    continue;
+                }
+                throw new ConfigException("Detected an object stored at Glacier. Set \"skip_glacier_objects\" option to \"true\" to skip this.");
+            }
+            objects.add(new InventoryObject(key, Long.parseLong(size)));
+        }
+        return objects;
+    }
+
+    private static boolean isGlacier(final String storageClass)
+    {
+        return StorageClass.Glacier.toString().equals(storageClass) || "DEEP_ARCHIVE".equals(storageClass);
+    }
+
+    private static Date parseDate(final SimpleDateFormat dateFormat, final String value)
+    {
+        if (value == null) {
+            throw new ConfigException("LastModifiedDate is required in the inventory to filter files by modified time");
+        }
+        try {
+            return dateFormat.parse(value);
+        }
+        catch (final ParseException ex) {
+            throw new RuntimeException(String.format("Unsupported LastModifiedDate '%s' in the inventory", value), ex);
+        }
+    }
+
+    // fields are enclosed by double quotes, and keys are URL-encoded
+    static List<String> parseCsvLine(final String line)
+    {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"') {
+                    quoted = false;
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static class Schema
+    {
+        private final int key;
+        private final int size;
+        private final int lastModifiedDate;
+        private final int storageClass;
+        private final int isLatest;
+        private final int isDeleteMarker;
+
+        Schema(final String fileSchema)
+        {
+            final List<String> columns = new ArrayList<>();
+            for (final String column : fileSchema.split(",")) {
+                columns.add(column.trim());
+            }
+            this.key = columns.indexOf("Key");
+            this.size = columns.indexOf("Size");
+            this.lastModifiedDate = columns.indexOf("LastModifiedDate");
+            this.storageClass = columns.indexOf("StorageClass");
+            this.isLatest = columns.indexOf("IsLatest");
+            this.isDeleteMarker = columns.indexOf("IsDeleteMarker");
+            if (key < 0 || size < 0) {
+                throw new ConfigException(String.format("Inventory must include Key and Size fields: '%s'", fileSchema));
+            }
+        }
+
+        // returns null if the column is not in the inventory
+        String get(final List<String> row, final int column)
+        {
+            return column >= 0 && column < row.size() ? row.get(column) : null;
+        }
+    }
+
+    // the current file of a sorted run
+    private static class RunCursor
+    {
+        private final List<String> keys;
+        private final List<FileList.Entry> entries;
+        private int index = -1;
+        // the key is cached since the queue compares it many times
+        private String key;
+
+        RunCursor(final FileList run)
+        {
+            this.keys = run.get(0);
+            this.entries = run.getEntries(0);
+        }
+
+        boolean hasNext()
+        {
+            return index + 1 < keys.size();
+        }
+
+        void next()
+        {
+            key = keys.get(++index);
+        }
+
+        String getKey()
+        {
+            return key;
+        }
+
+        long getSize()
+        {
+            return entries.get(index).getSize();
+        }
+    }
+
+    static class InventoryObject
+    {
+        private final String key;
+        private final long size;
+
+        InventoryObject(final String key, final long size)
+        {
+            this.key = key;
+            this.size = size;
+        }
+
+        String getKey()
+        {
+            return key;
+        }
+
+        long getSize()
+        {
+            return size;
+        }
+    }
+}
@@ -17,45 +17,54 @@
 package org.embulk.input.s3.explorer;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import org.embulk.input.s3.DefaultRetryable;
 import org.embulk.util.retryhelper.RetryExecutor;
 
 import java.util.List;
 
 public class S3NameOrderPrefixFileExplorer extends S3PrefixFileExplorer
 {
-    private String lastPath;
+    private final String startAfter;
+    private String continuationToken;
 
     public S3NameOrderPrefixFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor,
             final String pathPrefix, final boolean skipGlacierObjects, final String lastPath)
     {
-        super(bucketName, s3Client, retryExecutor, pathPrefix, skipGlacierObjects);
-        this.lastPath = lastPath;
+        this(bucketName, s3Client, retryExecutor, pathPrefix, skipGlacierObjects, lastPath, 1);
+    }
+
+    public S3NameOrderPrefixFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor,
+            final String pathPrefix, final boolean skipGlacierObjects, final String lastPath, final int listingParallelism)
+    {
+        super(bucketName, s3Client, retryExecutor, pathPrefix, skipGlacierObjects, listingParallelism);
+        this.startAfter = lastPath;
     }
 
     @Override
     protected List<S3ObjectSummary> fetch()
     {
-        final ListObjectsRequest req = new ListObjectsRequest(bucketName, pathPrefix, lastPath, null, 1024);
-        final ObjectListing ol = new DefaultRetryable<ObjectListing>("Listing objects")
-        {
-            @Override
-            public ObjectListing call()
-            {
-                return s3Client.listObjects(req);
-            }
-        }.executeWith(retryExecutor);
-        lastPath = ol.getNextMarker();
-
-        return ol.getObjectSummaries();
+        final ListObjectsV2Result result = listObjects(pathPrefix, startAfter, continuationToken, null);
+        continuationToken = nextContinuationToken(result);
+
+        return result.getObjectSummaries();
     }
 
     @Override
     protected boolean hasNext()
     {
-        return lastPath != null;
+        return continuationToken != null;
+    }
+
+    @Override
+    protected S3PrefixFileExplorer newShardExplorer(final String shardPrefix)
+    {
+        return new S3NameOrderPrefixFileExplorer(bucketName, s3Client, retryExecutor, shardPrefix, skipGlacierObjects, startAfter);
+    }
+
+    @Override
+    protected String getStartAfter()
+    {
+        return startAfter;
     }
 }
@@ -17,57 +17,412 @@
 package org.embulk.input.s3.explorer;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.model.StorageClass;
 import org.embulk.config.ConfigException;
+import org.embulk.input.s3.DaemonThreadFactory;
+import org.embulk.input.s3.DefaultRetryable;
 import org.embulk.input.s3.FileList;
 import org.embulk.util.retryhelper.RetryExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 public abstract class S3PrefixFileExplorer extends S3FileExplorer
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(S3PrefixFileExplorer.class);
 
+    private static final String DELIMITER = "/";
+
+    // The maximum number of keys in a LIST response of S3. Some S3 compatible storages accept larger pages.
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    // Sub-prefixes are discovered at most this many levels below path_prefix for parallel listing, unless needsDescending.
+    private static final int MAX_DISCOVERY_DEPTH = 3;
+
+    // Adjacent shards are merged into up to this many groups per thread, so that threads are balanced even if
+    // some shards are larger than others, while a level with many sub-prefixes doesn't make as many partitions.
+    private static final int SHARD_GROUPS_PER_THREAD = 4;
+
     protected String pathPrefix;
+    protected final boolean skipGlacierObjects;
 
-    private final boolean skipGlacierObjects;
+    private final int listingParallelism;
+    protected int pageSize = DEFAULT_PAGE_SIZE;
 
     public S3PrefixFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor, final String pathPrefix, final boolean skipGlacierObjects)
+    {
+        this(bucketName, s3Client, retryExecutor, pathPrefix, skipGlacierObjects, 1);
+    }
+
+    public S3PrefixFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor, final String pathPrefix, final boolean skipGlacierObjects,
+            final int listingParallelism)
     {
         super(bucketName, s3Client, retryExecutor);
         this.pathPrefix = pathPrefix;
         this.skipGlacierObjects = skipGlacierObjects;
+        this.listingParallelism = listingParallelism;
+    }
+
+    /**
+     * Sets the maximum number of keys in a LIST response.
+     */
+    public S3PrefixFileExplorer withPageSize(final int pageSize)
+    {
+        this.pageSize = pageSize;
+        return this;
     }
 
     @Override
     public void addToBuilder(final FileList.Builder builder)
     {
-        do {
-            final List<S3ObjectSummary> s3ObjectSummaries = fetch();
+        if (isPruned(pathPrefix)) {
+            return;
+        }
+        if (listingParallelism > 1 || needsDescending(pathPrefix)) {
+            addToBuilderInParallel(builder);
+            return;
+        }
+
+        listPages(s -> {
+            builder.add(s.getKey(), s.getSize());
+            if (!builder.needsMore()) {
+                LOGGER.warn("Too many files matched, stop listing file");
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Lists files into a partition of a builder on the current thread, so that explorers of different prefixes
+     * can list files concurrently.
+     */
+    public void addToPartition(final FileList.Builder.Partition partition)
+    {
+        if (isPruned(pathPrefix)) {
+            return;
+        }
+        listPages(s -> {
+            partition.add(s.getKey(), s.getSize());
+            return partition.needsMore();
+        });
+    }
 
-            for (final S3ObjectSummary s : s3ObjectSummaries) {
-                if (s.getStorageClass().equals(StorageClass.Glacier.toString())) {
-                    if (skipGlacierObjects) {
-                        LOGGER.warn("Skipped \"s3://{}/{}\" that stored at Glacier.", bucketName, s.getKey());
-                        continue;
+    /**
+     * Passes listable objects to {@code sink} page by page until it returns false or no pages are left.
+     *
+     * The next page is requested in background as soon as the current page is fetched, so that the round trip
+     * of the LIST request overlaps with processing the current page. {@link #fetch()} and {@link #hasNext()}
+     * are still called one at a time.
+     */
+    private void listPages(final Predicate<S3ObjectSummary> sink)
+    {
+        ExecutorService prefetcher = null;
+        try {
+            List<S3ObjectSummary> page = fetch();
+            while (true) {
+                Future<List<S3ObjectSummary>> next = null;
+                if (hasNext()) {
+                    if (prefetcher == null) {
+                        prefetcher = Executors.newSingleThreadExecutor(new DaemonThreadFactory("embulk-input-s3-listing-"));
                     }
-                    throw new ConfigException("Detected an object stored at Glacier. Set \"skip_glacier_objects\" option to \"true\" to skip this.");
+                    next = prefetcher.submit(this::fetch);
                 }
-                if (s.getSize() > 0) {
-                    builder.add(s.getKey(), s.getSize());
-                    if (!builder.needsMore()) {
-                        LOGGER.warn("Too many files matched, stop listing file");
+                for (final S3ObjectSummary s : page) {
+                    if (isListable(s) && !sink.test(s)) {
                         return;
                     }
                 }
+                if (next == null) {
+                    return;
+                }
+                page = getResult(next);
+            }
+        }
+        finally {
+            if (prefetcher != null) {
+                prefetcher.shutdownNow();
             }
-        } while (hasNext());
+        }
     }
 
     protected abstract List<S3ObjectSummary> fetch();
 
+    /**
+     * Lists a page of keys by ListObjectsV2. {@code startAfter} is used only for the first page, which has no
+     * {@code continuationToken}. Owners of objects are not fetched since they are never used.
+     */
+    protected ListObjectsV2Result listObjects(final String prefix, final String startAfter, final String continuationToken, final String delimiter)
+    {
+        final ListObjectsV2Request req = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix)
+                .withDelimiter(delimiter)
+                .withMaxKeys(pageSize)
+                .withFetchOwner(false);
+        if (continuationToken != null) {
+            req.setContinuationToken(continuationToken);
+        }
+        else {
+            req.setStartAfter(startAfter);
+        }
+        return new DefaultRetryable<ListObjectsV2Result>(delimiter != null ? "Listing sub-prefixes" : "Listing objects")
+        {
+            @Override
+            public ListObjectsV2Result call()
+            {
+                return s3Client.listObjectsV2(req);
+            }
+        }.executeWith(retryExecutor);
+    }
+
+    /**
+     * Returns the token to list the next page, or null if the result is the last page.
+     */
+    protected static String nextContinuationToken(final ListObjectsV2Result result)
+    {
+        return result.isTruncated() ? result.getNextContinuationToken() : null;
+    }
+
     protected abstract boolean hasNext();
+
+    /**
+     * Creates an explorer which lists only keys under {@code shardPrefix} with the same conditions as this explorer.
+     *
+     * It is used to list files with {@code listing_parallelism} larger than 1.
+     */
+    protected abstract S3PrefixFileExplorer newShardExplorer(String shardPrefix);
+
+    /**
+     * Returns whether an object found while discovering sub-prefixes is a target of this explorer.
+     */
+    protected boolean isTarget(final S3ObjectSummary s)
+    {
+        return true;
+    }
+
+    /**
+     * Returns whether keys under the prefix, which ends with the delimiter, are excluded without listing them.
+     */
+    protected boolean isPruned(final String prefix)
+    {
+        return false;
+    }
+
+    /**
+     * Returns whether the prefix has to be split into sub-prefixes by the delimiter to evaluate {@link #isPruned(String)}
+     * on them. The prefix is split even if {@code listing_parallelism} is 1.
+     */
+    protected boolean needsDescending(final String prefix)
+    {
+        return false;
+    }
+
+    /**
+     * Returns the key to start listing after, or null to list from the head of the prefix.
+     */
+    protected String getStartAfter()
+    {
+        return null;
+    }
+
+    private boolean isListable(final S3ObjectSummary s)
+    {
+        if (s.getStorageClass().equals(StorageClass.Glacier.toString())) {
+            if (skipGlacierObjects) {
+                LOGGER.warn("Skipped \"s3://{}/{}\" that stored at Glacier.", bucketName, s.getKey());
+                return false;
+            }
+            throw new ConfigException("Detected an object stored at Glacier. Set \"skip_glacier_objects\" option to \"true\" to skip this.");
+        }
+        return s.getSize() > 0;
+    }
+
+    /**
+     * Lists files by splitting the key space into shards of sub-prefixes discovered with the delimiter "/".
+     *
+     * Each shard is a contiguous range of keys in lexicographical order. Adjacent shards are merged into groups,
+     * and the groups are listed concurrently into partitions of the builder, which are merged in the order of
+     * the groups so that the last path is kept correct.
+     */
+    private void addToBuilderInParallel(final FileList.Builder builder)
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(listingParallelism, new DaemonThreadFactory("embulk-input-s3-listing-"));
+        try {
+            final List<Shard> shards = discoverShards(executor);
+            final List<List<Shard>> groups = groupShards(shards, listingParallelism * SHARD_GROUPS_PER_THREAD);
+            LOGGER.info("Listing files under prefix [{}] with {} shards in {} groups in parallel", pathPrefix, shards.size(), groups.size());
+
+            listInPartitions(builder, executor, listingParallelism, groups, this::listGroup);
+            if (!builder.needsMore()) {
+                LOGGER.warn("Too many files matched, stop listing file");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Merges adjacent shards into up to {@code maxGroups} groups with even numbers of shards to list. Objects
+     * found while discovering shards join the group of the shards around them.
+     */
+    static List<List<Shard>> groupShards(final List<Shard> shards, final int maxGroups)
+    {
+        final long prefixShards = shards.stream().filter(shard -> shard.prefix != null).count();
+        final long shardsPerGroup = Math.max(1, (prefixShards + maxGroups - 1) / maxGroups);
+        final List<List<Shard>> groups = new ArrayList<>();
+        List<Shard> group = new ArrayList<>();
+        int groupPrefixes = 0;
+        for (final Shard shard : shards) {
+            if (shard.prefix != null) {
+                if (groupPrefixes == shardsPerGroup) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                    groupPrefixes = 0;
+                }
+                groupPrefixes++;
+            }
+            group.add(shard);
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private List<Shard> discoverShards(final ExecutorService executor)
+    {
+        List<Shard> shards = Collections.singletonList(Shard.ofPrefix(pathPrefix));
+        for (int depth = 0; true; depth++) {
+            final long prefixShards = shards.stream().filter(shard -> shard.prefix != null).count();
+            final boolean splitting = depth < MAX_DISCOVERY_DEPTH && prefixShards < listingParallelism;
+
+            final List<Future<List<Shard>>> children = new ArrayList<>(shards.size());
+            boolean descending = false;
+            for (final Shard shard : shards) {
+                if (shard.prefix != null && (splitting || needsDescending(shard.prefix))) {
+                    children.add(executor.submit(() -> listChildren(shard.prefix)));
+                    descending = true;
+                }
+                else {
+                    children.add(null);
+                }
+            }
+            if (!descending) {
+                break;
+            }
+
+            final List<Shard> expanded = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                if (children.get(i) == null) {
+                    expanded.add(shards.get(i));
+                }
+                else {
+                    expanded.addAll(getResult(children.get(i)));
+                }
+            }
+            shards = expanded;
+        }
+        return shards;
+    }
+
+    /**
+     * Lists direct children of the prefix with the delimiter.
+     *
+     * Keys under a common prefix are contiguous in lexicographical order, and no direct object can be in
+     * the middle of them. So sorting the children by their keys keeps the order of all keys under them.
+     */
+    private List<Shard> listChildren(final String prefix)
+    {
+        final List<Shard> children = new ArrayList<>();
+        final List<ListedObject> objects = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            final ListObjectsV2Result result = listObjects(prefix, getStartAfter(), continuationToken, DELIMITER);
+
+            for (final S3ObjectSummary s : result.getObjectSummaries()) {
+                if (isTarget(s) && isListable(s)) {
+                    objects.add(new ListedObject(s.getKey(), s.getSize()));
+                }
+            }
+            for (final String commonPrefix : result.getCommonPrefixes()) {
+                if (!isPruned(commonPrefix)) {
+                    children.add(Shard.ofPrefix(commonPrefix));
+                }
+            }
+            continuationToken = nextContinuationToken(result);
+        } while (continuationToken != null);
+
+        for (final ListedObject o : objects) {
+            children.add(Shard.ofObject(o));
+        }
+        children.sort(Comparator.comparing(shard -> shard.key));
+        return children;
+    }
+
+    private void listGroup(final List<Shard> group, final FileList.Builder.Partition partition)
+    {
+        for (final Shard shard : group) {
+            if (!partition.needsMore()) {
+                return;
+            }
+            if (shard.prefix == null) {
+                for (final ListedObject o : shard.objects) {
+                    partition.add(o.key, o.size);
+                }
+            }
+            else {
+                newShardExplorer(shard.prefix).withPageSize(pageSize).addToPartition(partition);
+            }
+        }
+    }
+
+    static class ListedObject
+    {
+        private final String key;
+        private final long size;
+
+        ListedObject(final String key, final long size)
+        {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    static class Shard
+    {
+        // The common prefix for a shard to be listed, or the key of an object already listed.
+        private final String key;
+        private final String prefix;
+        private final List<ListedObject> objects;
+
+        private Shard(final String key, final String prefix, final List<ListedObject> objects)
+        {
+            this.key = key;
+            this.prefix = prefix;
+            this.objects = objects;
+        }
+
+        static Shard ofPrefix(final String prefix)
+        {
+            return new Shard(prefix, prefix, null);
+        }
+
+        static Shard ofObject(final ListedObject object)
+        {
+            return new Shard(object.key, null, Collections.singletonList(object));
+        }
+    }
 }
@@ -17,10 +17,8 @@
 package org.embulk.input.s3.explorer;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import org.embulk.input.s3.DefaultRetryable;
 import org.embulk.util.retryhelper.RetryExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,14 +35,20 @@ public class S3TimeOrderPrefixFileExplorer extends S3PrefixFileExplorer
     private final Optional<Date> from;
     private final Date to;
 
-    private String lastPath;
+    private String continuationToken;
 
     private int numOfReq = 0;
 
     public S3TimeOrderPrefixFileExplorer(final String bucket, final AmazonS3 client, final RetryExecutor retryExecutor,
             final String pathPrefix, final boolean skipGlacierObjects, final Optional<Date> from, final Date to)
     {
-        super(bucket, client, retryExecutor, pathPrefix, skipGlacierObjects);
+        this(bucket, client, retryExecutor, pathPrefix, skipGlacierObjects, from, to, 1);
+    }
+
+    public S3TimeOrderPrefixFileExplorer(final String bucket, final AmazonS3 client, final RetryExecutor retryExecutor,
+            final String pathPrefix, final boolean skipGlacierObjects, final Optional<Date> from, final Date to, final int listingParallelism)
+    {
+        super(bucket, client, retryExecutor, pathPrefix, skipGlacierObjects, listingParallelism);
         this.from = from;
         this.to = to;
     }
@@ -54,30 +58,34 @@ public class S3TimeOrderPrefixFileExplorer extends S3PrefixFileExplorer
     {
         ++numOfReq;
 
-        final ListObjectsRequest req = new ListObjectsRequest(bucketName, pathPrefix, lastPath, null, 1024);
-        final ObjectListing objectListing = new DefaultRetryable<ObjectListing>("Listing objects")
-        {
-            @Override
-            public ObjectListing call()
-            {
-                return s3Client.listObjects(req);
-            }
-        }.executeWith(retryExecutor);
-        lastPath = objectListing.getNextMarker();
+        final ListObjectsV2Result result = listObjects(pathPrefix, null, continuationToken, null);
+        continuationToken = nextContinuationToken(result);
 
-        return objectListing.getObjectSummaries()
+        return result.getObjectSummaries()
                 .stream()
-                .filter(s3ObjectSummary -> s3ObjectSummary.getLastModified().before(to)
-                        && (!from.isPresent() || s3ObjectSummary.getLastModified().equals(from.get()) || s3ObjectSummary.getLastModified().after(from.get())))
+                .filter(this::isTarget)
                 .collect(Collectors.toList());
     }
 
+    @Override
+    protected boolean isTarget(final S3ObjectSummary s3ObjectSummary)
+    {
+        return s3ObjectSummary.getLastModified().before(to)
+                && (!from.isPresent() || s3ObjectSummary.getLastModified().equals(from.get()) || s3ObjectSummary.getLastModified().after(from.get()));
+    }
+
+    @Override
+    protected S3PrefixFileExplorer newShardExplorer(final String shardPrefix)
+    {
+        return new S3TimeOrderPrefixFileExplorer(bucketName, s3Client, retryExecutor, shardPrefix, skipGlacierObjects, from, to);
+    }
+
     @Override
     public boolean hasNext()
     {
-        if (lastPath == null) {
+        if (continuationToken == null) {
             LOGGER.info("The total number of LIST requests is {}{}.", numOfReq,
-                    numOfReq < 10 ? "" : ". Clean up your s3 bucket to reduce the number of requests and improve the ingesting performance");
+                    numOfReq < 10 ? "" : ". Clean up your s3 bucket or use path_prefix_template to reduce the number of requests and improve the ingesting performance");
             return false;
         }
         return true;
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.embulk.config.ConfigException;
+import org.embulk.input.s3.DaemonThreadFactory;
+import org.embulk.input.s3.FileList;
+import org.embulk.util.retryhelper.RetryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lists files modified in [from, to) under prefixes expanded from a template of path_prefix like {@code logs/%Y/%m/%d/%H/}.
+ *
+ * The template is expanded for every hour (or the finest unit in the template) from {@code from - lookback} to
+ * {@code to}, so that only prefixes which can have new files are listed. The prefixes are listed in order by
+ * {@code listing_parallelism} threads, each into a partition created only when the prefix is submitted.
+ * Without {@code from}, or if the template expands into too many prefixes, the literal head of the template is
+ * listed instead.
+ */
+public class S3TimeTemplatePrefixFileExplorer extends S3FileExplorer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3TimeTemplatePrefixFileExplorer.class);
+
+    static final int MAX_EXPANDED_PREFIXES = 10000;
+
+    private final String template;
+    private final boolean skipGlacierObjects;
+    private final Optional<Date> from;
+    private final Date to;
+    private final int listingParallelism;
+    private final ZoneId zone;
+    private final Duration lookback;
+    private int pageSize = S3PrefixFileExplorer.DEFAULT_PAGE_SIZE;
+
+    public S3TimeTemplatePrefixFileExplorer(final String bucket, final AmazonS3 client, final RetryExecutor retryExecutor,
+            final String template, final boolean skipGlacierObjects, final Optional<Date> from, final Date to, final int listingParallelism,
+            final ZoneId zone, final Duration lookback)
+    {
+        super(bucket, client, retryExecutor);
+        this.template = template;
+        this.skipGlacierObjects = skipGlacierObjects;
+        this.from = from;
+        this.to = to;
+        this.listingParallelism = listingParallelism;
+        this.zone = zone;
+        this.lookback = lookback;
+        // validates placeholders before listing
+        expand(template, to.toInstant(), to.toInstant(), zone);
+    }
+
+    /**
+     * Sets the maximum number of keys in a LIST response.
+     */
+    public S3TimeTemplatePrefixFileExplorer withPageSize(final int pageSize)
+    {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    @Override
+    public void addToBuilder(final FileList.Builder builder)
+    {
+        final List<String> prefixes = getPrefixes();
+        if (prefixes.size() == 1) {
+            newExplorer(prefixes.get(0), listingParallelism).addToBuilder(builder);
+            return;
+        }
+
+        LOGGER.info("Listing files under {} prefixes expanded from [{}] in parallel", prefixes.size(), template);
+        final ExecutorService executor = Executors.newFixedThreadPool(listingParallelism, new DaemonThreadFactory("embulk-input-s3-listing-"));
+        try {
+            listInPartitions(builder, executor, listingParallelism, prefixes, (prefix, partition) -> newExplorer(prefix, 1).addToPartition(partition));
+            if (!builder.needsMore()) {
+                LOGGER.warn("Too many files matched, stop listing file");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    List<String> getPrefixes()
+    {
+        if (from.isPresent()) {
+            final List<String> prefixes = expand(template, from.get().toInstant().minus(lookback), to.toInstant(), zone);
+            if (prefixes.size() <= MAX_EXPANDED_PREFIXES) {
+                return prefixes;
+            }
+            LOGGER.warn("path_prefix [{}] expands into more than {} prefixes. Listing files under the head of it instead.",
+                    template, MAX_EXPANDED_PREFIXES);
+        }
+        final int placeholder = template.indexOf('%');
+        return Collections.singletonList(placeholder < 0 ? template : template.substring(0, placeholder));
+    }
+
+    private S3TimeOrderPrefixFileExplorer newExplorer(final String prefix, final int parallelism)
+    {
+        final S3TimeOrderPrefixFileExplorer explorer = new S3TimeOrderPrefixFileExplorer(bucketName, s3Client, retryExecutor, prefix,
+                skipGlacierObjects, from, to, parallelism);
+        explorer.withPageSize(pageSize);
+        return explorer;
+    }
+
+    /**
+     * Expands the template for every unit of its finest placeholder in [from, to]. Supported placeholders are
+     * %Y (year), %m (month), %d (day), %H (hour), %M (minute) and %% ('%').
+     */
+    static List<String> expand(final String template, final Instant from, final Instant to, final ZoneId zone)
+    {
+        final ChronoUnit unit = finestUnit(template);
+        if (unit == null) {
+            return Collections.singletonList(template);
+        }
+        final Set<String> prefixes = new LinkedHashSet<>();
+        ZonedDateTime time = truncate(from.atZone(zone), unit);
+        while (!time.toInstant().isAfter(to) && prefixes.size() <= MAX_EXPANDED_PREFIXES) {
+            prefixes.add(format(template, time));
+            time = time.plus(1, unit);
+        }
+        return new ArrayList<>(prefixes);
+    }
+
+    private static ChronoUnit finestUnit(final String template)
+    {
+        ChronoUnit finest = null;
+        for (int i = 0; i < template.length(); i++) {
+            if (template.charAt(i) != '%') {
+                continue;
+            }
+            if (i + 1 == template.length()) {
+                throw new ConfigException("path_prefix ends with '%': " + template);
+            }
+            final ChronoUnit unit;
+            switch (template.charAt(++i)) {
+                case 'Y':
+                    unit = ChronoUnit.YEARS;
+                    break;
+                case 'm':
+                    unit = ChronoUnit.MONTHS;
+                    break;
+                case 'd':
+                    unit = ChronoUnit.DAYS;
+                    break;
+                case 'H':
+                    unit = ChronoUnit.HOURS;
+                    break;
+                case 'M':
+                    unit = ChronoUnit.MINUTES;
+                    break;
+                case '%':
+                    continue;
+                default:
+                    throw new ConfigException("Unsupported placeholder in path_prefix: %" + template.charAt(i));
+            }
+            if (finest == null || unit.getDuration().compareTo(finest.getDuration()) < 0) {
+                finest = unit;
+            }
+        }
+        return finest;
+    }
+
+    private static ZonedDateTime truncate(final ZonedDateTime time, final ChronoUnit unit)
+    {
+        switch (unit) {
+            case YEARS:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+            case MONTHS:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            default:
+                return time.truncatedTo(unit);
+        }
+    }
+
+    private static String format(final String template, final ZonedDateTime time)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c != '%') {
+                sb.append(c);
+                continue;
+            }
+            switch (template.charAt(++i)) {
+                case 'Y':
+                    sb.append(String.format("%04d", time.getYear()));
+                    break;
+                case 'm':
+                    sb.append(String.format("%02d", time.getMonthValue()));
+                    break;
+                case 'd':
+                    sb.append(String.format("%02d", time.getDayOfMonth()));
+                    break;
+                case 'H':
+                    sb.append(String.format("%02d", time.getHour()));
+                    break;
+                case 'M':
+                    sb.append(String.format("%02d", time.getMinute()));
+                    break;
+                default:
+                    sb.append('%');
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.util.retryhelper.RetryExecutor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAdaptiveRetryPolicy
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();  // require for DefaultRetryable's logger
+
+    private static AmazonServiceException serviceException(final int statusCode, final String errorCode)
+    {
+        final AmazonServiceException ex = new AmazonServiceException(errorCode);
+        ex.setStatusCode(statusCode);
+        ex.setErrorCode(errorCode);
+        return ex;
+    }
+
+    private static AdaptiveRetryPolicy newPolicy(final int retryLimit)
+    {
+        return new AdaptiveRetryPolicy(retryLimit, 0, 0, 0, new AdaptiveRetryPolicy.RetryBudget(1000), new AdaptiveRetryPolicy.Throttle());
+    }
+
+    @Test
+    public void classifyErrors()
+    {
+        assertTrue(AdaptiveRetryPolicy.isThrottling(serviceException(503, "SlowDown")));
+        assertTrue(AdaptiveRetryPolicy.isThrottling(serviceException(400, "RequestLimitExceeded")));
+        assertFalse(AdaptiveRetryPolicy.isThrottling(serviceException(500, "InternalError")));
+        assertFalse(AdaptiveRetryPolicy.isThrottling(new SdkClientException("timeout")));
+
+        assertTrue(AdaptiveRetryPolicy.isTransientSocketError(new SdkClientException("reset", new SocketException("Connection reset"))));
+        assertFalse(AdaptiveRetryPolicy.isTransientSocketError(new SdkClientException("unknown")));
+        assertFalse(AdaptiveRetryPolicy.isTransientSocketError(serviceException(500, "InternalError")));
+    }
+
+    @Test
+    public void waitRandomlyUpToBackoff()
+    {
+        final AdaptiveRetryPolicy policy = new AdaptiveRetryPolicy(10, 100, 2000, 10000,
+                new AdaptiveRetryPolicy.RetryBudget(1000), new AdaptiveRetryPolicy.Throttle());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.retryWaitMillis(1, true) <= 100);
+            assertTrue(policy.retryWaitMillis(3, true) <= 400);
+            assertTrue(policy.retryWaitMillis(1, false) <= 2000);
+            assertTrue(policy.retryWaitMillis(10, false) <= 10000);
+        }
+    }
+
+    @Test
+    public void runWithRegisteredPolicy()
+    {
+        final RetryExecutor executor = RetryExecutor.builder().withRetryLimit(3).build();
+        newPolicy(3).register(executor);
+        final AtomicInteger calls = new AtomicInteger();
+        // the executor itself would wait for 2 seconds before retrying
+        final long start = System.nanoTime();
+        final String result = new DefaultRetryable<String>() {
+            @Override
+            public String call()
+            {
+                if (calls.incrementAndGet() < 3) {
+                    throw serviceException(503, "SlowDown");
+                }
+                return "ok";
+            }
+        }.executeWith(executor);
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+    }
+
+    @Test
+    public void giveUpWithOriginalException()
+    {
+        final RetryExecutor executor = RetryExecutor.builder().withRetryLimit(2).build();
+        newPolicy(2).register(executor);
+        final AtomicInteger calls = new AtomicInteger();
+        final IOException failure = new IOException("failed");
+        try {
+            new DefaultRetryable<Object>() {
+                @Override
+                public Object call() throws IOException
+                {
+                    calls.incrementAndGet();
+                    throw failure;
+                }
+            }.executeWithCheckedException(executor, IOException.class);
+            fail();
+        }
+        catch (final IOException ex) {
+            assertSame(failure, ex);
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void notRetryNonRetryableException()
+    {
+        final RetryExecutor executor = RetryExecutor.builder().withRetryLimit(3).build();
+        newPolicy(3).register(executor);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            new DefaultRetryable<Object>() {
+                @Override
+                public Object call()
+                {
+                    calls.incrementAndGet();
+                    throw serviceException(403, "AccessDenied");
+                }
+            }.executeWith(executor);
+            fail();
+        }
+        catch (final AmazonServiceException ex) {
+            assertEquals(403, ex.getStatusCode());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void waitForRetryBudget()
+    {
+        // the bucket holds 10 seconds of tokens
+        final AdaptiveRetryPolicy.RetryBudget budget = new AdaptiveRetryPolicy.RetryBudget(1);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, budget.reserve());
+        }
+        final long wait = budget.reserve();
+        assertTrue(wait > 900_000_000L && wait <= 1_000_000_000L);
+    }
+
+    @Test
+    public void slowDownWhileThrottled()
+    {
+        final AdaptiveRetryPolicy.Throttle throttle = new AdaptiveRetryPolicy.Throttle();
+        assertEquals(0, throttle.getDelayNanos());
+        throttle.onThrottled();
+        assertEquals(AdaptiveRetryPolicy.Throttle.MIN_DELAY_NANOS, throttle.getDelayNanos());
+        // throttled responses of requests sent at once increase the delay only once
+        throttle.onThrottled();
+        assertEquals(AdaptiveRetryPolicy.Throttle.MIN_DELAY_NANOS, throttle.getDelayNanos());
+
+        throttle.onSuccess();
+        throttle.onSuccess();
+        throttle.onSuccess();
+        assertEquals(0, throttle.getDelayNanos());
+    }
+}
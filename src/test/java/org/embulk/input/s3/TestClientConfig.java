@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestClientConfig
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private ConfigSource config;
+
+    @Before
+    public void createResources()
+    {
+        config = runtime.getExec().newConfigSource()
+                .set("bucket", "my_bucket")
+                .set("path_prefix", "my_path_prefix");
+    }
+
+    @Test
+    public void checkDefaultClientConfig()
+    {
+        final ConfigMapper configMapper = CONFIG_MAPPER_FACTORY.createConfigMapper();
+        final S3FileInputPlugin.PluginTask task = configMapper.map(config.deepCopy(), S3FileInputPlugin.PluginTask.class);
+        assertFalse(task.getClientConfig().isPresent());
+        assertEquals(Math.max(50, Runtime.getRuntime().availableProcessors() * 2 * 2), S3FileInputPlugin.getMaxConnections(task));
+    }
+
+    @Test
+    public void checkMaxConnections()
+    {
+        final ConfigMapper configMapper = CONFIG_MAPPER_FACTORY.createConfigMapper();
+        { // sized by connections of a task
+            final S3FileInputPlugin.PluginTask task = configMapper.map(config.deepCopy()
+                    .set("download_concurrency", 16)
+                    .set("prefetch_depth", 3), S3FileInputPlugin.PluginTask.class);
+            assertEquals(Math.max(50, Runtime.getRuntime().availableProcessors() * 2 * 20), S3FileInputPlugin.getMaxConnections(task));
+        }
+
+        { // sized by shared threads
+            final S3FileInputPlugin.PluginTask task = configMapper.map(config.deepCopy()
+                    .set("download_concurrency", 16)
+                    .set("shared_download_threads", 200), S3FileInputPlugin.PluginTask.class);
+            assertEquals(Math.max(50, Runtime.getRuntime().availableProcessors() * 2 + 200), S3FileInputPlugin.getMaxConnections(task));
+        }
+
+        { // specify max_connections
+            final S3FileInputPlugin.PluginTask task = configMapper.map(config.deepCopy()
+                    .set("client_config", runtime.getExec().newConfigSource().set("max_connections", 10)), S3FileInputPlugin.PluginTask.class);
+            assertEquals(10, S3FileInputPlugin.getMaxConnections(task));
+        }
+    }
+
+    @Test
+    public void checkClientConfig()
+    {
+        final ConfigMapper configMapper = CONFIG_MAPPER_FACTORY.createConfigMapper();
+        final ClientConfig clientConfig = configMapper.map(runtime.getExec().newConfigSource()
+                .set("connection_timeout_millis", 1000)
+                .set("connection_ttl_millis", 60000)
+                .set("tcp_keep_alive", true), ClientConfig.class);
+        assertEquals(Optional.of(1000), clientConfig.getConnectionTimeoutMillis());
+        assertEquals(Optional.of(60000L), clientConfig.getConnectionTtlMillis());
+        assertEquals(Optional.of(true), clientConfig.getTcpKeepAlive());
+        assertFalse(clientConfig.getSocketTimeoutMillis().isPresent());
+        assertFalse(clientConfig.getUseGzip().isPresent());
+    }
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
@@ -16,19 +16,45 @@
 
 package org.embulk.input.s3;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import org.embulk.EmbulkTestRuntime;
 import org.embulk.config.ConfigSource;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestFileList
 {
     @Rule
     public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private ConfigSource config;
 
     @Before
@@ -90,6 +116,438 @@ public class TestFileList
         }
     }
 
+    @Test
+    public void getFilesAcrossBlocksInAnyOrder()
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK * 3 + 10;
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("min_task_size", 1000));
+        for (int i = 0; i < count; i++) {
+            builder.add(String.format("sample_%05d", i), 100L);
+        }
+        final FileList fileList = builder.build();
+
+        assertEquals((count + 9) / 10, fileList.getTaskCount());
+        for (int task = fileList.getTaskCount() - 1; task >= 0; task--) {
+            final List<String> files = fileList.get(task);
+            // read backward to force seeking in the list
+            for (int i = files.size() - 1; i >= 0; i--) {
+                assertEquals(String.format("sample_%05d", task * 10 + i), files.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void getFilesAgainAfterLastFile()
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK * 2;
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("min_task_size", Long.MAX_VALUE));
+        for (int i = 0; i < count; i++) {
+            builder.add(String.format("sample_%05d", i), 100L);
+        }
+        final List<String> files = builder.build().get(0);
+
+        // the block is closed after the last file is read, and opened again if needed
+        assertEquals(String.format("sample_%05d", count - 1), files.get(count - 1));
+        assertEquals(String.format("sample_%05d", count - 1), files.get(count - 1));
+        assertEquals("sample_00000", files.get(0));
+        assertEquals(new ArrayList<>(files), new ArrayList<>(files));
+    }
+
+    @Test
+    public void getPathsSharingPrefixes()
+            throws Exception
+    {
+        final List<String> paths = Arrays.asList(
+                "logs/2019/01/01/host-a.csv",
+                "logs/2019/01/01/host-b.csv",
+                "logs/2019/01/01/host-b.csv.1",
+                "logs/2019/01/02/host-a.csv",
+                "logs/2019/01",
+                "ログ/あ.csv",
+                "ログ/い.csv",
+                "",
+                "other.csv");
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("min_task_size", 1000));
+        for (String path : paths) {
+            builder.add(path, 100L);
+        }
+        final FileList fileList = builder.build();
+        assertEquals(1, fileList.getTaskCount());
+        assertEquals(paths, new ArrayList<>(fileList.get(0)));
+        assertEquals("ログ/い.csv", fileList.get(0).get(6));
+        assertEquals("logs/2019/01/01/host-b.csv.1", fileList.get(0).get(2));
+    }
+
+    @Test
+    public void readLegacyGzipData()
+            throws Exception
+    {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(binary))) {
+            for (final String path : Arrays.asList("sample_00", "sample_01", "sample_02")) {
+                final byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        final List<List<FileList.Entry>> tasks = new ArrayList<>();
+        tasks.add(Arrays.asList(new FileList.Entry(0, 100L), new FileList.Entry(2, 100L)));
+        tasks.add(Collections.singletonList(new FileList.Entry(1, 100L)));
+
+        @SuppressWarnings("deprecation")
+        final FileList fileList = new FileList(binary.toByteArray(), tasks, Optional.of("sample_02"));
+
+        assertEquals("sample_02", fileList.get(0).get(1));
+        assertEquals("sample_00", fileList.get(0).get(0));
+        assertEquals("sample_01", fileList.get(1).get(0));
+    }
+
+    @Test
+    public void spillToFile()
+            throws Exception
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK * 2 + 10;
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy()
+                .set("min_task_size", 1000)
+                .set("file_list_spill", true)
+                .set("file_list_spill_directory", temporaryFolder.getRoot().getAbsolutePath()));
+        for (int i = 0; i < count; i++) {
+            builder.add(String.format("sample_%05d", i), 100L);
+        }
+        final FileList fileList = builder.build();
+
+        assertNull(fileList.getData());
+        assertNull(fileList.getTasks());
+        assertEquals((count + 9) / 10, fileList.getTaskCount());
+        for (int task = fileList.getTaskCount() - 1; task >= 0; task--) {
+            final List<String> files = fileList.get(task);
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(String.format("sample_%05d", task * 10 + i), files.get(i));
+            }
+        }
+        assertEquals(Optional.of(String.format("sample_%05d", count - 1)), fileList.getLastPath(Optional.empty()));
+
+        fileList.deleteSpillFile();
+        assertFalse(temporaryFolder.getRoot().toPath().resolve(fileList.getSpill().getPath()).toFile().exists());
+    }
+
+    @Test
+    public void readSpilledBlocksBeyond2GB()
+            throws Exception
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK * 2 + 10;
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy()
+                .set("min_task_size", 1000)
+                .set("file_list_spill", true)
+                .set("file_list_spill_directory", temporaryFolder.getRoot().getAbsolutePath()));
+        for (int i = 0; i < count; i++) {
+            builder.add(String.format("sample_%05d", i), 100L);
+        }
+        final FileList.SpillFile spill = builder.build().getSpill();
+
+        // moves the whole file after a sparse gap of 3 GB, and fakes the offsets of blocks and tables
+        final long gap = 3L << 30;
+        final ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(Paths.get(spill.getPath())));
+        for (int block = 0; block < spill.getBlockCount(); block++) {
+            final int position = (int) spill.getBlockTableOffset() + 8 * block;
+            contents.putLong(position, contents.getLong(position) + gap);
+        }
+        final Path moved = temporaryFolder.newFile().toPath();
+        try (FileChannel channel = FileChannel.open(moved, StandardOpenOption.WRITE)) {
+            channel.write(contents, gap);
+        }
+        final FileList.SpillFile movedSpill = new FileList.SpillFile(moved.toString(), spill.getBlockTableOffset() + gap, spill.getBlockCount(),
+                spill.getTaskTableOffset() + gap, spill.getTaskCount(), spill.getEntriesOffset() + gap);
+        final FileList fileList = new FileList(null, null, null, Optional.empty(), null, null, FileList.ENTRIES_PER_BLOCK, movedSpill);
+
+        assertEquals((count + 9) / 10, fileList.getTaskCount());
+        for (int task = fileList.getTaskCount() - 1; task >= 0; task--) {
+            final List<String> files = fileList.get(task);
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(String.format("sample_%05d", task * 10 + i), files.get(i));
+            }
+        }
+        fileList.deleteSpillFile();
+    }
+
+    @Test
+    public void splitLargeFilesByMaxTaskSize()
+            throws Exception
+    {
+        final ConfigSource base = config.deepCopy().set("max_task_size", 100);
+        for (ConfigSource c : Arrays.asList(base, base.deepCopy()
+                .set("file_list_spill", true)
+                .set("file_list_spill_directory", temporaryFolder.getRoot().getAbsolutePath()))) {
+            FileList fileList = newFileList(c,
+                    "sample_00", 100L,
+                    "sample_01", 250L);
+
+            assertEquals(4, fileList.getTaskCount());
+            assertEquals(Arrays.asList("sample_00"), fileList.get(0));
+            assertFalse(fileList.getEntries(0).get(0).hasRange());
+            for (int i = 1; i < 4; i++) {
+                final FileList.Entry entry = fileList.getEntries(i).get(0);
+                assertEquals(Arrays.asList("sample_01"), fileList.get(i));
+                assertEquals(250L, entry.getSize());
+                assertEquals((i - 1) * 100L, entry.getRangeStart());
+                assertEquals(Math.min(i * 100L, 250L), entry.getRangeEnd());
+            }
+            fileList.deleteSpillFile();
+        }
+    }
+
+    @Test
+    public void packFilesIntoEvenTasks()
+            throws Exception
+    {
+        FileList fileList = newFileList(config.deepCopy()
+                        .set("task_split_strategy", "bin_packing")
+                        .set("max_task_count", 3),
+                "sample_00", 1000L,
+                "sample_01", 10L,
+                "sample_02", 10L,
+                "sample_03", 10L,
+                "sample_04", 10L,
+                "sample_05", 10L,
+                "sample_06", 500L,
+                "sample_07", 500L);
+
+        assertEquals(3, fileList.getTaskCount());
+        assertEquals(Arrays.asList("sample_00"), fileList.get(0));
+        assertEquals(Arrays.asList("sample_01", "sample_03", "sample_05", "sample_06"), fileList.get(1));
+        assertEquals(Arrays.asList("sample_02", "sample_04", "sample_07"), fileList.get(2));
+    }
+
+    @Test
+    public void packFilesWithCostPerFileAndMinTaskSize()
+            throws Exception
+    {
+        // 4 files cost 4 * (10 + 90) = 400, and tasks have 200 in average
+        FileList fileList = newFileList(config.deepCopy()
+                        .set("task_split_strategy", "bin_packing")
+                        .set("cost_per_file", 90)
+                        .set("min_task_size", 200)
+                        .set("max_task_count", 100),
+                "sample_00", 10L,
+                "sample_01", 10L,
+                "sample_02", 10L,
+                "sample_03", 10L);
+
+        assertEquals(2, fileList.getTaskCount());
+        assertEquals(Arrays.asList("sample_00", "sample_02"), fileList.get(0));
+        assertEquals(Arrays.asList("sample_01", "sample_03"), fileList.get(1));
+    }
+
+    @Test
+    public void packEmptyFilesIntoAllTasks()
+            throws Exception
+    {
+        FileList fileList = newFileList(config.deepCopy()
+                        .set("task_split_strategy", "bin_packing")
+                        .set("cost_per_file", 0)
+                        .set("min_task_size", 0)
+                        .set("max_task_count", 2),
+                "sample_00", 0L,
+                "sample_01", 0L,
+                "sample_02", 0L);
+
+        assertEquals(2, fileList.getTaskCount());
+        assertEquals(Arrays.asList("sample_00", "sample_02"), fileList.get(0));
+        assertEquals(Arrays.asList("sample_01"), fileList.get(1));
+    }
+
+    @Test
+    public void serializeEntriesCompactly()
+            throws Exception
+    {
+        final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        final FileList original = newFileList(config.deepCopy().set("max_task_size", 100),
+                "sample_00", 100L,
+                "sample_01", 250L,
+                "sample_02", 0L);
+        final String json = mapper.writeValueAsString(original);
+        assertTrue(json.contains("\"entries\""));
+        assertFalse(json.contains("\"tasks\""));
+
+        final FileList fileList = mapper.readValue(json, FileList.class);
+        assertEquals(original.getTaskCount(), fileList.getTaskCount());
+        for (int i = 0; i < fileList.getTaskCount(); i++) {
+            assertEquals(original.get(i), fileList.get(i));
+            for (int j = 0; j < fileList.getEntries(i).size(); j++) {
+                final FileList.Entry expected = original.getEntries(i).get(j);
+                final FileList.Entry actual = fileList.getEntries(i).get(j);
+                assertEquals(expected.getIndex(), actual.getIndex());
+                assertEquals(expected.getSize(), actual.getSize());
+                assertEquals(expected.getRangeStart(), actual.getRangeStart());
+                assertEquals(expected.getRangeEnd(), actual.getRangeEnd());
+            }
+        }
+    }
+
+    @Test
+    public void deserializeLegacyTasks()
+            throws Exception
+    {
+        final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        final FileList original = newFileList(config.deepCopy(),
+                "sample_00", 100L,
+                "sample_01", 200L);
+        final String json = mapper.writeValueAsString(original).replaceFirst("\"entries\":\"[^\"]*\"",
+                "\"tasks\":[[{\"index\":1,\"size\":200}],[{\"index\":0,\"size\":100,\"range_start\":0,\"range_end\":50}]]");
+
+        final FileList fileList = mapper.readValue(json, FileList.class);
+        assertEquals(2, fileList.getTaskCount());
+        assertEquals(Arrays.asList("sample_01"), fileList.get(0));
+        assertEquals(Arrays.asList("sample_00"), fileList.get(1));
+        assertFalse(fileList.getEntries(0).get(0).hasRange());
+        assertEquals(50L, fileList.getEntries(1).get(0).getRangeEnd());
+    }
+
+    @Test
+    public void notifyAddedFilesOfPartitions()
+    {
+        final List<String> added = Collections.synchronizedList(new ArrayList<>());
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("path_match_pattern", "\\.csv$"))
+                .onAdd((path, size) -> added.add(path + ":" + size));
+        builder.add("a.csv", 1L);
+        builder.add("a.txt", 2L);
+        final FileList.Builder.Partition partition = builder.newPartition();
+        partition.add("b.csv", 3L);
+        partition.add("b.txt", 4L);
+
+        assertEquals(Arrays.asList("a.csv:1", "b.csv:3"), added);
+    }
+
+    @Test
+    public void mergePartitionsInOrder()
+            throws Exception
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK + 10;
+        for (ConfigSource c : Arrays.asList(config.deepCopy(), config.deepCopy()
+                .set("file_list_spill", true)
+                .set("file_list_spill_directory", temporaryFolder.getRoot().getAbsolutePath()))) {
+            final FileList.Builder builder = new FileList.Builder(c.set("path_match_pattern", "\\.csv$").set("min_task_size", 1L << 40));
+            builder.add("a/0.csv", 1L);
+            final List<FileList.Builder.Partition> partitions = Arrays.asList(builder.newPartition(), builder.newPartition());
+            final List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < partitions.size(); p++) {
+                final String prefix = p == 0 ? "b/" : "c/";
+                final FileList.Builder.Partition partition = partitions.get(p);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < count; i++) {
+                        partition.add(String.format("%s%05d.csv", prefix, i), i + 1);
+                        partition.add(String.format("%s%05d.txt", prefix, i), i + 1);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(1 + count * 2, builder.size());
+
+            final FileList fileList = builder.build();
+            final List<String> paths = fileList.get(0);
+            assertEquals(1 + count * 2, paths.size());
+            assertEquals("a/0.csv", paths.get(0));
+            for (int i = 0; i < count; i++) {
+                assertEquals(String.format("b/%05d.csv", i), paths.get(1 + i));
+                assertEquals(String.format("c/%05d.csv", i), paths.get(1 + count + i));
+                assertEquals(i + 1, fileList.getEntries(0).get(1 + count + i).getSize());
+            }
+            assertEquals(Optional.of(String.format("c/%05d.csv", count - 1)), fileList.getLastPath(Optional.empty()));
+            fileList.deleteSpillFile();
+        }
+    }
+
+    @Test
+    public void mergeFinishedPartitionsInOrder()
+    {
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("min_task_size", 1L << 40));
+        final FileList.Builder.Partition first = builder.newPartition();
+        final FileList.Builder.Partition empty = builder.newPartition();
+        final FileList.Builder.Partition third = builder.newPartition();
+        third.add("c/0", 1L);
+        third.finish();
+        empty.finish();
+        first.add("a/0", 1L);
+        first.add("a/1", 1L);
+        first.finish();
+        try {
+            first.add("a/2", 1L);
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            // expected
+        }
+        assertEquals(3, builder.size());
+
+        final FileList fileList = builder.build();
+        assertEquals(Arrays.asList("a/0", "a/1", "c/0"), new ArrayList<>(fileList.get(0)));
+        assertEquals(Optional.of("c/0"), fileList.getLastPath(Optional.empty()));
+    }
+
+    @Test
+    public void addAfterMergingPartition()
+    {
+        final int count = FileList.ENTRIES_PER_BLOCK + 476;
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy().set("min_task_size", 1L << 40));
+        builder.add("a/0", 1L);
+        final FileList.Builder.Partition partition = builder.newPartition();
+        for (int i = 0; i < count; i++) {
+            partition.add(String.format("b/%05d", i), 1L);
+        }
+        try {
+            builder.add("c/0", 1L);
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            // expected
+        }
+        partition.finish();
+        for (int i = 0; i < FileList.ENTRIES_PER_BLOCK + 1; i++) {
+            builder.add(String.format("c/%05d", i), 1L);
+        }
+
+        final FileList fileList = builder.build();
+        final List<String> paths = fileList.get(0);
+        assertEquals(1 + count + FileList.ENTRIES_PER_BLOCK + 1, paths.size());
+        assertEquals("a/0", paths.get(0));
+        assertEquals(String.format("b/%05d", count - 1), paths.get(count));
+        for (int i = 0; i < FileList.ENTRIES_PER_BLOCK + 1; i++) {
+            assertEquals(String.format("c/%05d", i), paths.get(1 + count + i));
+        }
+        assertEquals(Optional.of(String.format("c/%05d", FileList.ENTRIES_PER_BLOCK)), fileList.getLastPath(Optional.empty()));
+    }
+
+    @Test
+    public void limitTotalFileCountOfPartitions()
+            throws Exception
+    {
+        final FileList.Builder builder = new FileList.Builder(config.deepCopy()
+                .set("total_file_count_limit", FileList.ENTRIES_PER_BLOCK + 5)
+                .set("min_task_size", 1L << 40));
+        final FileList.Builder.Partition first = builder.newPartition();
+        final FileList.Builder.Partition second = builder.newPartition();
+        for (int i = 0; i < 3; i++) {
+            first.add(String.format("a/%05d", i), 1L);
+        }
+        for (int i = 0; i < FileList.ENTRIES_PER_BLOCK * 2; i++) {
+            second.add(String.format("b/%05d", i), 1L);
+        }
+        assertFalse(second.needsMore());
+        assertFalse(builder.needsMore());
+
+        final FileList fileList = builder.build();
+        final List<String> paths = fileList.get(0);
+        assertEquals(FileList.ENTRIES_PER_BLOCK + 5, paths.size());
+        assertEquals(String.format("b/%05d", FileList.ENTRIES_PER_BLOCK + 1), paths.get(paths.size() - 1));
+        assertEquals(Optional.of(String.format("b/%05d", FileList.ENTRIES_PER_BLOCK + 1)), fileList.getLastPath(Optional.empty()));
+
+        final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        assertEquals(paths, mapper.readValue(mapper.writeValueAsString(fileList), FileList.class).get(0));
+    }
+
     private static FileList newFileList(ConfigSource config, Object... nameAndSize)
     {
         FileList.Builder builder = new FileList.Builder(config);
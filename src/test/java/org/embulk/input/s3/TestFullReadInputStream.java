@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestFullReadInputStream
+{
+    @Test
+    public void fillRequestedLengthFromShortReads()
+            throws IOException
+    {
+        final byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        try (InputStream in = new FullReadInputStream(new ShortReadInputStream(data, 7))) {
+            final byte[] b = new byte[110];
+            assertEquals(40, in.read(b, 0, 40));
+            assertEquals(50, in.read(b, 40, 50));
+            // the rest is shorter than requested
+            assertEquals(10, in.read(b, 90, 20));
+            assertEquals(-1, in.read(b, 0, 20));
+            final byte[] expected = new byte[110];
+            System.arraycopy(data, 0, expected, 0, data.length);
+            assertArrayEquals(expected, b);
+        }
+    }
+
+    @Test
+    public void readZeroLength()
+            throws IOException
+    {
+        try (InputStream in = new FullReadInputStream(new ShortReadInputStream(new byte[10], 3))) {
+            assertEquals(0, in.read(new byte[10], 0, 0));
+            assertEquals(10, in.read(new byte[10], 0, 10));
+        }
+    }
+
+    // returns at most chunk bytes by a read like a socket
+    private static class ShortReadInputStream
+            extends ByteArrayInputStream
+    {
+        private final int chunk;
+
+        ShortReadInputStream(final byte[] data, final int chunk)
+        {
+            super(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len)
+        {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
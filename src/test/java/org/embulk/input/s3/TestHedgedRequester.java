@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestHedgedRequester
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void useFasterHedgedRequest() throws Exception
+    {
+        final HedgedRequester hedger = new HedgedRequester(executor, 95, 10, 1.0);
+        final CountDownLatch releasePrimary = new CountDownLatch(1);
+        final CountDownLatch discarded = new CountDownLatch(1);
+        final List<String> discards = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = hedger.call(() -> {
+            if (attempts.getAndIncrement() == 0) {
+                releasePrimary.await();
+                return "primary";
+            }
+            return "hedged";
+        }, value -> {
+            discards.add(value);
+            discarded.countDown();
+        });
+        assertEquals("hedged", result);
+        assertEquals(1, hedger.getHedgedCount());
+
+        // the slow primary request is discarded when it completes
+        releasePrimary.countDown();
+        assertTrue(discarded.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("primary"), discards);
+    }
+
+    @Test
+    public void notHedgeFastRequest() throws Exception
+    {
+        final HedgedRequester hedger = new HedgedRequester(executor, 95, 10000, 1.0);
+        final AtomicInteger attempts = new AtomicInteger();
+        assertEquals("ok", hedger.call(() -> {
+            attempts.incrementAndGet();
+            return "ok";
+        }, value -> fail()));
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedger.getHedgedCount());
+    }
+
+    @Test
+    public void limitRatioOfHedgedRequests() throws Exception
+    {
+        // the bucket has a token at first, and gets no more tokens
+        final HedgedRequester hedger = new HedgedRequester(executor, 95, 0, 0.0);
+        for (int i = 0; i < 5; i++) {
+            hedger.call(() -> {
+                Thread.sleep(20);
+                return "ok";
+            }, value -> { });
+        }
+        assertEquals(1, hedger.getHedgedCount());
+    }
+
+    @Test
+    public void throwFirstFailureIfAllRequestsFail() throws Exception
+    {
+        final HedgedRequester hedger = new HedgedRequester(executor, 95, 0, 1.0);
+        final IllegalStateException failure = new IllegalStateException("failed");
+        try {
+            hedger.call(() -> {
+                throw failure;
+            }, value -> fail());
+            fail();
+        }
+        catch (final IllegalStateException ex) {
+            assertSame(failure, ex);
+        }
+    }
+
+    @Test
+    public void adaptDelayToPercentileOfLatencies()
+    {
+        final HedgedRequester hedger = new HedgedRequester(executor, 90, 200, 0.05);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), hedger.getDelayNanos());
+        for (int i = 1; i <= 100; i++) {
+            hedger.recordLatency(i);
+        }
+        // recomputed from the first 64 latencies
+        assertEquals(58, hedger.getDelayNanos());
+        for (int i = 0; i < HedgedRequester.WINDOW_SIZE; i++) {
+            hedger.recordLatency(1000);
+        }
+        // old latencies are out of the window
+        assertEquals(1000, hedger.getDelayNanos());
+    }
+}
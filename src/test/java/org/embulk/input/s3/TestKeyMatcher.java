@@ -0,0 +1,69 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestKeyMatcher
+{
+    private static final List<String> KEYS = Arrays.asList(
+            "", "a", "b", "x.csv", "x.csv.gz", "x.csv\n", "x.csv\r\n", "x.csv\r", "x.csv\u2028", "x.csv\n\n", "\n",
+            "data1/a", "/data1/x", "s3/data2/", "logs/a", "x/logs/a", "ushers", "a.b", "aXb", "a$", "ahishers", "ログ/い.csv");
+
+    @Test
+    public void matchLikeRegex()
+    {
+        for (String regex : Arrays.asList(
+                "\\.csv$", "/data1/|/data2/", "^logs/", "^a$", "^$", ".*", "", "^", "$", ".*$", "^.*", "^.*$",
+                "he|she|his|hers|usher", "\\Qa.b\\E", "a\\.b|\\$$", "a\\$", "csv$|^logs/|^a$|data", "い\\.csv$",
+                "foo.bar", "(?i)CSV", "\\d", "a|b|c|d|e|f", "x.csv\\n")) {
+            final KeyMatcher matcher = KeyMatcher.compile(regex);
+            final Pattern pattern = Pattern.compile(regex);
+            for (String key : KEYS) {
+                assertEquals(regex + " for " + key.replace("\n", "\\n"), pattern.matcher(key).find(), matcher.matches(key));
+            }
+        }
+    }
+
+    @Test
+    public void matchLiteralsWithoutRegex()
+    {
+        assertEquals("all keys", KeyMatcher.compile(".*").toString());
+        assertEquals("0 exact, 0 prefix, 1 suffix and 0 substring literals", KeyMatcher.compile("\\.csv$").toString());
+        assertEquals("0 exact, 0 prefix, 0 suffix and 2 substring literals", KeyMatcher.compile("/data1/|/data2/").toString());
+        assertEquals("1 exact, 1 prefix, 0 suffix and 5 substring literals", KeyMatcher.compile("^a$|^b|c|d|e|f|g").toString());
+        assertEquals("regex", KeyMatcher.compile("[0-9]+\\.csv$").toString());
+        assertEquals("regex", KeyMatcher.compile("^.*$").toString());
+    }
+
+    @Test
+    public void findManySubstrings()
+    {
+        final KeyMatcher matcher = KeyMatcher.compile("/2019/|/2020/|/2021/|/2022/|/2023/|/2024/");
+        assertTrue(matcher.matches("logs/2022/01/a.csv"));
+        assertTrue(matcher.matches("logs/20/2024/"));
+        assertFalse(matcher.matches("logs/2025/2019"));
+    }
+}
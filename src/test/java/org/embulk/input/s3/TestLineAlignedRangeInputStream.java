@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLineAlignedRangeInputStream
+{
+    private static final String DATA = "a,1\nbb,22\n\nccc,333\r\ndddd,4444\neeeee,55555";
+
+    @Test
+    public void concatenatedRangesShouldBeTheWholeFile()
+            throws Exception
+    {
+        final byte[] data = DATA.getBytes(StandardCharsets.UTF_8);
+        for (int rangeSize = 1; rangeSize <= data.length; rangeSize++) {
+            final StringBuilder all = new StringBuilder();
+            for (int start = 0; start < data.length; start += rangeSize) {
+                final String range = read(data, start, Math.min(start + rangeSize, data.length));
+                // every range consists of whole lines
+                if (!range.isEmpty()) {
+                    assertTrue(start == 0 || data[all.length() - 1] == '\n');
+                    assertTrue(range.endsWith("\n") || all.length() + range.length() == data.length);
+                }
+                all.append(range);
+            }
+            assertEquals("range size " + rangeSize, DATA, all.toString());
+        }
+    }
+
+    @Test
+    public void lineStartingAtRangeStartBelongsToTheRange()
+            throws Exception
+    {
+        final byte[] data = DATA.getBytes(StandardCharsets.UTF_8);
+        assertEquals("a,1\n", read(data, 0, 4));
+        assertEquals("bb,22\n", read(data, 4, 5));
+        assertEquals("", read(data, 5, 10));
+        assertEquals("\n", read(data, 10, 11));
+    }
+
+    private static String read(byte[] data, long start, long end)
+            throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new LineAlignedRangeInputStream(
+                (first, last) -> new ByteArrayInputStream(data, (int) first, (int) (last - first + 1)),
+                start, end, data.length)) {
+            final byte[] buffer = new byte[3];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.file.InputStreamFileInput;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestObjectPrefetcher
+{
+    @Test
+    public void pollInAddedOrder()
+            throws Exception
+    {
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(2)) {
+            assertTrue(prefetcher.isEmpty());
+            for (int i = 0; i < 3; i++) {
+                assertFalse(prefetcher.isFull());
+                final String name = "object_" + i;
+                final long wait = (2 - i) * 20L;  // opens later objects earlier
+                prefetcher.add(() -> {
+                    Thread.sleep(wait);
+                    return new InputStreamFileInput.InputStreamWithHints(new ByteArrayInputStream(new byte[0]), name);
+                });
+            }
+            assertTrue(prefetcher.isFull());
+            assertFalse(prefetcher.isEmpty());
+            for (int i = 0; i < 3; i++) {
+                assertEquals("object_" + i, prefetcher.poll().getHintOfCurrentInputFileNameForLogging().get());
+            }
+            assertTrue(prefetcher.isEmpty());
+            assertNull(prefetcher.poll());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void pollShouldThrowExceptionOfOpener()
+            throws Exception
+    {
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(1)) {
+            prefetcher.add(() -> {
+                throw new IOException("failed");
+            });
+            prefetcher.poll();
+        }
+    }
+
+    @Test
+    public void closeShouldCloseObjectsNotPolled()
+            throws Exception
+    {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(1);
+        final ObjectPrefetcher prefetcher = new ObjectPrefetcher(1);
+        prefetcher.add(() -> {
+            started.countDown();
+            return new InputStreamFileInput.InputStreamWithHints(new ByteArrayInputStream(new byte[0]) {
+                @Override
+                public void close()
+                {
+                    closed.set(true);
+                }
+            }, "object");
+        });
+        started.await();
+        prefetcher.close();
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void closeShouldNotWaitForObjectsNotStarted()
+            throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        final CountDownLatch busy = new CountDownLatch(1);
+        final AtomicBoolean opened = new AtomicBoolean();
+        try {
+            // another task occupies the only thread of the shared executor
+            executor.submit(() -> {
+                busy.await();
+                return null;
+            });
+            final ObjectPrefetcher prefetcher = new ObjectPrefetcher(1, executor);
+            prefetcher.add(() -> {
+                opened.set(true);
+                return new InputStreamFileInput.InputStreamWithHints(new ByteArrayInputStream(new byte[0]), "object");
+            });
+            prefetcher.close();
+
+            busy.countDown();
+            executor.submit(() -> null).get();
+            assertFalse(opened.get());
+        }
+        finally {
+            busy.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void closeShouldNotShutdownSharedExecutor()
+            throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(2, executor)) {
+                prefetcher.add(() -> new InputStreamFileInput.InputStreamWithHints(new ByteArrayInputStream(new byte[0]), "object"));
+                assertEquals("object", prefetcher.poll().getHintOfCurrentInputFileNameForLogging().get());
+            }
+            assertFalse(executor.isShutdown());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestParallelRangeInputStream
+{
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor()
+    {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void shutdownExecutor()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readPartsInOrder()
+            throws Exception
+    {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        for (int partSize : Arrays.asList(1, 7, 100, 999, 1000)) {
+            try (InputStream in = new ParallelRangeInputStream(opener(data, new AtomicInteger()), 10, 990, partSize, 4, executor)) {
+                assertArrayEquals("part size " + partSize, Arrays.copyOfRange(data, 10, 990), readAll(in));
+            }
+        }
+    }
+
+    @Test
+    public void downloadOnlyConcurrencyPartsAhead()
+            throws Exception
+    {
+        final byte[] data = new byte[1000];
+        final AtomicInteger opened = new AtomicInteger();
+        try (InputStream in = new ParallelRangeInputStream(opener(data, opened), 0, data.length, 100, 3, executor)) {
+            Thread.sleep(100);
+            assertEquals(3, opened.get());
+            in.read();  // moves to the 1st part, and starts the 4th part
+            Thread.sleep(100);
+            assertEquals(4, opened.get());
+        }
+    }
+
+    private static RangeOpener opener(byte[] data, AtomicInteger opened)
+    {
+        return (first, last) -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(data, (int) first, (int) (last - first + 1));
+        };
+    }
+
+    private static byte[] readAll(InputStream in)
+            throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[64];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class TestS3ClientCache
+{
+    @Test
+    public void shareClientWithSameKey()
+    {
+        final S3ClientCache cache = new S3ClientCache(60 * 1000);
+        try (S3ClientCache.Lease a = cache.acquire("a", () -> mock(AmazonS3.class));
+                S3ClientCache.Lease a2 = cache.acquire("a", () -> mock(AmazonS3.class));
+                S3ClientCache.Lease b = cache.acquire("b", () -> mock(AmazonS3.class))) {
+            assertSame(a.getClient(), a2.getClient());
+            assertNotSame(a.getClient(), b.getClient());
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void reuseClientReleasedWithinIdleTimeout()
+    {
+        final S3ClientCache cache = new S3ClientCache(60 * 1000);
+        final AmazonS3 client = mock(AmazonS3.class);
+        cache.acquire("a", () -> client).close();
+        try (S3ClientCache.Lease lease = cache.acquire("a", () -> mock(AmazonS3.class))) {
+            assertSame(client, lease.getClient());
+        }
+        verify(client, never()).shutdown();
+    }
+
+    @Test
+    public void shutdownIdleClient()
+            throws Exception
+    {
+        final S3ClientCache cache = new S3ClientCache(10);
+        final AmazonS3 client = mock(AmazonS3.class);
+        final S3ClientCache.Lease lease = cache.acquire("a", () -> client);
+        final S3ClientCache.Lease other = cache.acquire("a", () -> mock(AmazonS3.class));
+        lease.close();
+        lease.close();  // releases only once
+        Thread.sleep(100);
+        verify(client, never()).shutdown();
+
+        other.close();
+        verify(client, timeout(1000)).shutdown();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestSharedDownloadExecutor
+{
+    @Test
+    public void sharePoolOfSameSize()
+    {
+        final SharedDownloadExecutor shared = new SharedDownloadExecutor();
+        try (SharedDownloadExecutor.Lease a = shared.acquire(4);
+                SharedDownloadExecutor.Lease a2 = shared.acquire(4);
+                SharedDownloadExecutor.Lease b = shared.acquire(8)) {
+            assertSame(a.getExecutor(), a2.getExecutor());
+            assertNotSame(a.getExecutor(), b.getExecutor());
+            assertEquals(2, shared.size());
+        }
+        assertEquals(0, shared.size());
+    }
+
+    @Test
+    public void shutdownWhenLastLeaseIsClosed()
+    {
+        final SharedDownloadExecutor shared = new SharedDownloadExecutor();
+        final SharedDownloadExecutor.Lease lease = shared.acquire(2);
+        final SharedDownloadExecutor.Lease other = shared.acquire(2);
+        final ExecutorService executor = lease.getExecutor();
+        lease.close();
+        lease.close();  // releases only once
+        assertFalse(executor.isShutdown());
+
+        other.close();
+        assertTrue(executor.isShutdown());
+        try (SharedDownloadExecutor.Lease next = shared.acquire(2)) {
+            assertNotSame(executor, next.getExecutor());
+        }
+    }
+}
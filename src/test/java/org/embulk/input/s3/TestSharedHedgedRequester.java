@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestSharedHedgedRequester
+{
+    @Test
+    public void shareRequesterOfSameConfiguration()
+    {
+        final SharedHedgedRequester shared = new SharedHedgedRequester();
+        try (SharedHedgedRequester.Lease a = shared.acquire(95.0, 200, 0.05, 50);
+                SharedHedgedRequester.Lease a2 = shared.acquire(95.0, 200, 0.05, 50);
+                SharedHedgedRequester.Lease b = shared.acquire(99.0, 200, 0.05, 50)) {
+            assertSame(a.getRequester(), a2.getRequester());
+            assertNotSame(a.getRequester(), b.getRequester());
+            assertEquals(2, shared.size());
+        }
+        assertEquals(0, shared.size());
+    }
+
+    @Test
+    public void newRequesterAfterLastLeaseIsClosed()
+            throws Exception
+    {
+        final SharedHedgedRequester shared = new SharedHedgedRequester();
+        final SharedHedgedRequester.Lease lease = shared.acquire(95.0, 200, 0.05, 2);
+        final SharedHedgedRequester.Lease other = shared.acquire(95.0, 200, 0.05, 2);
+        final HedgedRequester requester = lease.getRequester();
+        lease.close();
+        lease.close();  // releases only once
+        assertEquals("ok", requester.call(() -> "ok", value -> { }));
+
+        other.close();
+        assertEquals(0, shared.size());
+        try (SharedHedgedRequester.Lease next = shared.acquire(95.0, 200, 0.05, 2)) {
+            assertNotSame(requester, next.getRequester());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestStreamingFileQueue
+{
+    @Test
+    public void takeFilesUntilEndByAllConsumers()
+            throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (StreamingFileQueue queue = StreamingFileQueue.register("takeFilesUntilEndByAllConsumers", 4)) {
+            assertSame(queue, StreamingFileQueue.lookup("takeFilesUntilEndByAllConsumers").get());
+            final List<Future<List<String>>> consumers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                consumers.add(executor.submit(() -> {
+                    final List<String> keys = new ArrayList<>();
+                    StreamingFileQueue.Item item;
+                    while ((item = queue.take()) != null) {
+                        keys.add(item.getKey() + ":" + item.getEntry().getSize());
+                    }
+                    return keys;
+                }));
+            }
+            // more files than the capacity are put while consumers take them
+            for (int i = 0; i < 100; i++) {
+                queue.put(String.format("%03d", i), i);
+            }
+            queue.finish(null);
+
+            final List<String> taken = new ArrayList<>();
+            for (Future<List<String>> consumer : consumers) {
+                taken.addAll(consumer.get());
+            }
+            Collections.sort(taken);
+            assertEquals(100, taken.size());
+            assertEquals("000:0", taken.get(0));
+            assertEquals("099:99", taken.get(99));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertFalse(StreamingFileQueue.lookup("takeFilesUntilEndByAllConsumers").isPresent());
+    }
+
+    @Test
+    public void takeShouldThrowFailureOfListing()
+            throws Exception
+    {
+        try (StreamingFileQueue queue = StreamingFileQueue.register("takeShouldThrowFailureOfListing", 4)) {
+            queue.put("a", 1);
+            queue.finish(new IllegalStateException("listing failed"));
+            assertEquals("a", queue.take().getKey());
+            for (int i = 0; i < 2; i++) {
+                try {
+                    queue.take();
+                    fail();
+                }
+                catch (IOException ex) {
+                    assertTrue(ex.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void putShouldFailAfterClosedWhenFull()
+    {
+        final StreamingFileQueue queue = StreamingFileQueue.register("putShouldFailAfterClosedWhenFull", 1);
+        queue.put("a", 1);
+        queue.close();
+        queue.put("b", 1);
+    }
+
+    @Test
+    public void takeShouldReturnNullAfterEnd()
+            throws IOException
+    {
+        assertEquals(Optional.empty(), StreamingFileQueue.lookup("unknown"));
+        try (StreamingFileQueue queue = StreamingFileQueue.register("takeShouldReturnNullAfterEnd", 1)) {
+            queue.finish(null);
+            assertNull(queue.take());
+            assertNull(queue.take());
+        }
+    }
+
+    @Test
+    public void pollShouldNotWaitForFiles()
+            throws IOException
+    {
+        try (StreamingFileQueue queue = StreamingFileQueue.register("pollShouldNotWaitForFiles", 2)) {
+            assertNull(queue.poll());
+            queue.put("a", 1);
+            assertEquals("a", queue.poll().getKey());
+            queue.finish(null);
+            assertNull(queue.poll());
+            assertNull(queue.take());
+        }
+    }
+}
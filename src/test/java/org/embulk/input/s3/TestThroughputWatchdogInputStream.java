@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3;
+
+import org.embulk.util.file.ResumableInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestThroughputWatchdogInputStream
+{
+    @Test
+    public void abortStalledConnection()
+            throws Exception
+    {
+        final StalledInputStream stalled = new StalledInputStream(new byte[] {1, 2, 3});
+        try (ThroughputWatchdogInputStream in = new ThroughputWatchdogInputStream(stalled, stalled::abort, 1024, 100)) {
+            final byte[] b = new byte[10];
+            assertEquals(3, in.read(b, 0, 10));
+            try {
+                in.read(b, 0, 10);
+                fail();
+            }
+            catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Read slower than 1,024 bytes/s"));
+            }
+            assertTrue(in.isSlow());
+        }
+    }
+
+    @Test
+    public void notAbortSlowConsumer()
+            throws Exception
+    {
+        final AtomicInteger aborted = new AtomicInteger();
+        try (ThroughputWatchdogInputStream in = new ThroughputWatchdogInputStream(
+                new ByteArrayInputStream(new byte[100]), aborted::incrementAndGet, 1024 * 1024, 40)) {
+            final byte[] b = new byte[10];
+            for (int i = 0; i < 10; i++) {
+                assertEquals(10, in.read(b, 0, 10));
+                // the consumer is slow, but reads are fast
+                Thread.sleep(20);
+            }
+            assertEquals(-1, in.read(b, 0, 10));
+            assertFalse(in.isSlow());
+        }
+        assertEquals(0, aborted.get());
+    }
+
+    @Test
+    public void reopenFromOffsetAfterAborted()
+            throws Exception
+    {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final StalledInputStream stalled = new StalledInputStream(Arrays.copyOf(data, 300));
+        final ThroughputWatchdogInputStream watched = new ThroughputWatchdogInputStream(stalled, stalled::abort, 1024, 100);
+        final AtomicInteger reopened = new AtomicInteger();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new ResumableInputStream(watched, (offset, cause) -> {
+            reopened.incrementAndGet();
+            return new ByteArrayInputStream(data, (int) offset, data.length - (int) offset);
+        })) {
+            final byte[] b = new byte[128];
+            int n;
+            while ((n = in.read(b)) >= 0) {
+                out.write(b, 0, n);
+            }
+        }
+        assertEquals(1, reopened.get());
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    // returns the data, and then blocks until aborted like a stalled connection
+    private static class StalledInputStream
+            extends ByteArrayInputStream
+    {
+        private final CountDownLatch aborted = new CountDownLatch(1);
+
+        StalledInputStream(final byte[] data)
+        {
+            super(data);
+        }
+
+        void abort()
+        {
+            aborted.countDown();
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len)
+        {
+            if (available() > 0) {
+                return super.read(b, off, len);
+            }
+            try {
+                aborted.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Connection aborted");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.input.s3.FileList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestS3HivePartitionFileExplorer
+{
+    private static final String BUCKET_NAME = "bucket_name";
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Mock
+    private AmazonS3 s3Client;
+
+    private final Set<String> listedPrefixes = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp()
+    {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            final ListObjectsV2Request req = (ListObjectsV2Request) invocation.getArguments()[0];
+            listedPrefixes.add(req.getPrefix());
+            if (req.getDelimiter() == null) {
+                return listResult(null, req.getPrefix() + "part-0.gz", req.getPrefix() + "part-1.gz");
+            }
+            switch (req.getPrefix()) {
+                case "logs/":
+                    return listResult(Arrays.asList("logs/dt=2019-01-01/", "logs/dt=2019-01-02/", "logs/dt=2019-01-03/"), "logs/_SUCCESS");
+                case "logs/dt=2019-01-02/":
+                case "logs/dt=2019-01-03/":
+                    return listResult(Arrays.asList(req.getPrefix() + "hour=00/", req.getPrefix() + "hour=01/", req.getPrefix() + "hour=02/"));
+                default:
+                    throw new AssertionError("Unexpected listing of " + req.getPrefix());
+            }
+        });
+    }
+
+    @Test
+    public void addToBuilder_should_list_only_partitions_passing_filters()
+    {
+        for (final int listingParallelism : Arrays.asList(1, 3)) {
+            listedPrefixes.clear();
+            final Map<String, Predicate<String>> filters = new HashMap<>();
+            filters.put("dt", value -> value.compareTo("2019-01-02") >= 0);
+            filters.put("hour", value -> value.equals("01") || value.equals("02"));
+            final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE);
+
+            new S3HivePartitionFileExplorer(BUCKET_NAME, s3Client, null, "logs/", false, null, listingParallelism, filters).addToBuilder(builder);
+
+            assertEquals(Arrays.asList(
+                    "logs/_SUCCESS",
+                    "logs/dt=2019-01-02/hour=01/part-0.gz",
+                    "logs/dt=2019-01-02/hour=01/part-1.gz",
+                    "logs/dt=2019-01-02/hour=02/part-0.gz",
+                    "logs/dt=2019-01-02/hour=02/part-1.gz",
+                    "logs/dt=2019-01-03/hour=01/part-0.gz",
+                    "logs/dt=2019-01-03/hour=01/part-1.gz",
+                    "logs/dt=2019-01-03/hour=02/part-0.gz",
+                    "logs/dt=2019-01-03/hour=02/part-1.gz"), builder.build().get(0));
+            assertFalse(listedPrefixes.contains("logs/dt=2019-01-01/"));
+            assertFalse(listedPrefixes.contains("logs/dt=2019-01-02/hour=00/"));
+        }
+    }
+
+    @Test
+    public void addToBuilder_should_prune_path_prefix()
+    {
+        final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*");
+
+        new S3HivePartitionFileExplorer(BUCKET_NAME, s3Client, null, "logs/dt=2019-01-01/", false, null, 1,
+                Collections.singletonMap("dt", value -> value.equals("2019-01-02"))).addToBuilder(builder);
+
+        assertEquals(0, builder.size());
+        assertEquals(Collections.emptySet(), listedPrefixes);
+    }
+
+    private static ListObjectsV2Result listResult(final List<String> commonPrefixes, final String... keys)
+    {
+        final ListObjectsV2Result ol = new ListObjectsV2Result();
+        for (final String key : keys) {
+            final S3ObjectSummary s = new S3ObjectSummary();
+            s.setKey(key);
+            s.setSize(1L);
+            s.setStorageClass(StorageClass.Standard.toString());
+            ol.getObjectSummaries().add(s);
+        }
+        if (commonPrefixes != null) {
+            ol.setCommonPrefixes(commonPrefixes);
+        }
+        return ol;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigException;
+import org.embulk.input.s3.FileList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestS3InventoryFileExplorer
+{
+    private static final String BUCKET_NAME = "bucket_name";
+    private static final String INVENTORY_BUCKET = "inventory_bucket";
+    private static final String MANIFEST = "inventory/bucket_name/manifest.json";
+    private static final String PATH_PREFIX = "path_prefix/";
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Mock
+    private AmazonS3 s3Client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        when(s3Client.getObject(INVENTORY_BUCKET, MANIFEST)).thenAnswer(invocation -> s3object(read("manifest.json")));
+        when(s3Client.getObject(INVENTORY_BUCKET, "inventory/bucket_name/data/data_01.csv")).thenAnswer(invocation -> s3object(read("data_01.csv")));
+        when(s3Client.getObject(INVENTORY_BUCKET, "inventory/bucket_name/data/data_02.csv.gz")).thenAnswer(invocation -> s3object(gzip(read("data_02.csv"))));
+    }
+
+    @Test
+    public void addToBuilder_should_add_objects_in_key_order()
+    {
+        final FileList.Builder builder = mock(FileList.Builder.class);
+        when(builder.needsMore()).thenReturn(true);
+
+        newExplorer(true, null, Optional.empty(), false).addToBuilder(builder);
+
+        final InOrder inOrder = inOrder(builder);
+        inOrder.verify(builder).add("path_prefix/a b.csv", 100);
+        inOrder.verify(builder).add("path_prefix/b.csv", 200);
+        inOrder.verify(builder).add("path_prefix/c.csv", 300);
+        verify(builder, never()).add("other/x.csv", 100);
+        verify(builder, never()).add("path_prefix/empty.csv", 0);
+        verify(builder, never()).add("path_prefix/glacier.csv", 200);
+    }
+
+    @Test
+    public void addToBuilder_should_filter_by_last_path_and_modified_time() throws Exception
+    {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        { // last_path
+            final FileList.Builder builder = mock(FileList.Builder.class);
+            when(builder.needsMore()).thenReturn(true);
+            newExplorer(true, "path_prefix/a b.csv", Optional.empty(), false).addToBuilder(builder);
+            verify(builder, never()).add("path_prefix/a b.csv", 100);
+            verify(builder).add("path_prefix/b.csv", 200);
+            verify(builder).add("path_prefix/c.csv", 300);
+        }
+
+        { // from (inclusive) and the creation time of the report (exclusive)
+            final FileList.Builder builder = mock(FileList.Builder.class);
+            when(builder.needsMore()).thenReturn(true);
+            final S3InventoryFileExplorer explorer = newExplorer(true, null, Optional.of(format.parse("2019-01-02")), true);
+            explorer.addToBuilder(builder);
+            verify(builder).add(anyString(), anyLong());
+            verify(builder).add("path_prefix/b.csv", 200);
+            assertEquals(format.parse("2019-01-03"), explorer.getCreationTime());
+        }
+
+        { // only the creation time of the report
+            final FileList.Builder builder = mock(FileList.Builder.class);
+            when(builder.needsMore()).thenReturn(true);
+            newExplorer(true, null, Optional.empty(), true).addToBuilder(builder);
+            verify(builder).add("path_prefix/a b.csv", 100);
+            verify(builder).add("path_prefix/b.csv", 200);
+            verify(builder, never()).add("path_prefix/c.csv", 300);
+        }
+    }
+
+    @Test
+    public void addToBuilder_should_merge_inventory_files_until_limit()
+    {
+        final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE).limitTotalFileCount(2);
+        newExplorer(true, null, Optional.empty(), false).addToBuilder(builder);
+
+        final FileList fileList = builder.build();
+        assertEquals(Arrays.asList("path_prefix/a b.csv", "path_prefix/b.csv"), new ArrayList<>(fileList.get(0)));
+        assertEquals(Optional.of("path_prefix/b.csv"), fileList.getLastPath(Optional.empty()));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void addToBuilder_should_throw_exception_if_glacier_objects_are_not_skipped()
+    {
+        final FileList.Builder builder = mock(FileList.Builder.class);
+        when(builder.needsMore()).thenReturn(true);
+        newExplorer(false, null, Optional.empty(), false).addToBuilder(builder);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void addToBuilder_should_reject_unsupported_format() throws Exception
+    {
+        final String manifest = new String(read("manifest.json"), "UTF-8").replace("\"CSV\"", "\"Parquet\"");
+        when(s3Client.getObject(INVENTORY_BUCKET, MANIFEST)).thenAnswer(invocation -> s3object(manifest.getBytes("UTF-8")));
+        newExplorer(true, null, Optional.empty(), false).addToBuilder(mock(FileList.Builder.class));
+    }
+
+    @Test
+    public void parseCsvLine_should_unquote_fields()
+    {
+        assertEquals(Arrays.asList("a", "b,c", "d\"e", ""), S3InventoryFileExplorer.parseCsvLine("\"a\",\"b,c\",\"d\"\"e\",\"\""));
+    }
+
+    private S3InventoryFileExplorer newExplorer(final boolean skipGlacierObjects, final String lastPath, final Optional<Date> from,
+            final boolean useModifiedTime)
+    {
+        return new S3InventoryFileExplorer(BUCKET_NAME, s3Client, null, INVENTORY_BUCKET, MANIFEST, PATH_PREFIX,
+                skipGlacierObjects, lastPath, from, useModifiedTime, 2);
+    }
+
+    private static byte[] read(final String name) throws Exception
+    {
+        final Path path = Paths.get(TestS3InventoryFileExplorer.class.getClassLoader().getResource("inventory/" + name).toURI());
+        return Files.readAllBytes(path);
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static S3Object s3object(final byte[] data)
+    {
+        final S3Object object = new S3Object();
+        final InputStream in = new ByteArrayInputStream(data);
+        object.setObjectContent(in);
+        return object;
+    }
+}
@@ -17,9 +17,12 @@
 package org.embulk.input.s3.explorer;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
 import org.embulk.EmbulkTestRuntime;
+import org.embulk.input.s3.FileList;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,10 +32,17 @@ import org.mockito.Mock;
 import org.mockito.internal.util.reflection.FieldSetter;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -60,24 +70,86 @@ public class TestS3NameOrderPrefixFileExplorer
     @Test
     public void fetch_should_return_list_objects()
     {
-        final ObjectListing ol = mock(ObjectListing.class);
-        when(s3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(ol);
+        final ListObjectsV2Result ol = mock(ListObjectsV2Result.class);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ol);
+
+        s3NameOrderPrefixFileExplorer.fetch();
+        final ArgumentCaptor<ListObjectsV2Request> listObjectsV2RequestCaptor = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+
+        verify(ol).isTruncated();
+        verify(s3Client).listObjectsV2(listObjectsV2RequestCaptor.capture());
+        final ListObjectsV2Request listObjectsV2Request = listObjectsV2RequestCaptor.getValue();
+        assertEquals(BUCKET_NAME, listObjectsV2Request.getBucketName());
+        assertEquals(PATH_PREFIX, listObjectsV2Request.getPrefix());
+        assertEquals(LAST_PATH, listObjectsV2Request.getStartAfter());
+        assertEquals(Integer.valueOf(S3PrefixFileExplorer.DEFAULT_PAGE_SIZE), listObjectsV2Request.getMaxKeys());
+        assertFalse(listObjectsV2Request.isFetchOwner());
+    }
+
+    @Test
+    public void fetch_should_list_next_page_by_continuation_token()
+    {
+        final ListObjectsV2Result first = listResult(null, "a");
+        first.setTruncated(true);
+        first.setNextContinuationToken("token");
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(first, listResult(null, "b"));
 
+        s3NameOrderPrefixFileExplorer.withPageSize(1);
         s3NameOrderPrefixFileExplorer.fetch();
-        final ArgumentCaptor<ListObjectsRequest> listObjectsRequestCaptor = ArgumentCaptor.forClass(ListObjectsRequest.class);
-
-        verify(ol).getNextMarker();
-        verify(s3Client).listObjects(listObjectsRequestCaptor.capture());
-        final ListObjectsRequest listObjectsRequest = listObjectsRequestCaptor.getValue();
-        assertEquals(BUCKET_NAME, listObjectsRequest.getBucketName());
-        assertEquals(PATH_PREFIX, listObjectsRequest.getPrefix());
-        assertEquals(LAST_PATH, listObjectsRequest.getMarker());
+        assertTrue(s3NameOrderPrefixFileExplorer.hasNext());
+        s3NameOrderPrefixFileExplorer.fetch();
+        assertFalse(s3NameOrderPrefixFileExplorer.hasNext());
+
+        final ArgumentCaptor<ListObjectsV2Request> captor = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(s3Client, times(2)).listObjectsV2(captor.capture());
+        assertEquals(Integer.valueOf(1), captor.getAllValues().get(0).getMaxKeys());
+        assertEquals("token", captor.getAllValues().get(1).getContinuationToken());
+        assertNull(captor.getAllValues().get(1).getStartAfter());
     }
 
     @Test
-    public void hasNext_should_return_false_if_no_lastpath() throws NoSuchFieldException
+    public void hasNext_should_return_false_if_no_continuation_token() throws NoSuchFieldException
     {
-        new FieldSetter(s3NameOrderPrefixFileExplorer, s3NameOrderPrefixFileExplorer.getClass().getDeclaredField("lastPath")).set(null);
+        new FieldSetter(s3NameOrderPrefixFileExplorer, s3NameOrderPrefixFileExplorer.getClass().getDeclaredField("continuationToken")).set(null);
         assertFalse(s3NameOrderPrefixFileExplorer.hasNext());
     }
+
+    @Test
+    public void addToBuilder_should_list_shards_in_parallel_and_keep_order()
+    {
+        final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            final ListObjectsV2Request req = (ListObjectsV2Request) invocation.getArguments()[0];
+            if (req.getDelimiter() != null) {
+                // "a/" and "c/" are sub-prefixes, and "b" is an object directly under the prefix
+                return listResult(Arrays.asList("a/", "c/"), "b");
+            }
+            if (req.getPrefix().equals("a/")) {
+                return listResult(null, "a/1", "a/2");
+            }
+            return listResult(null, "c/1");
+        });
+
+        new S3NameOrderPrefixFileExplorer(BUCKET_NAME, s3Client, null, "", false, null, 2).addToBuilder(builder);
+
+        final FileList fileList = builder.build();
+        assertEquals(Arrays.asList("a/1", "a/2", "b", "c/1"), fileList.get(0));
+        assertEquals(Optional.of("c/1"), fileList.getLastPath(Optional.empty()));
+    }
+
+    private static ListObjectsV2Result listResult(final List<String> commonPrefixes, final String... keys)
+    {
+        final ListObjectsV2Result ol = new ListObjectsV2Result();
+        for (final String key : keys) {
+            final S3ObjectSummary s = new S3ObjectSummary();
+            s.setKey(key);
+            s.setSize(1L);
+            s.setStorageClass(StorageClass.Standard.toString());
+            ol.getObjectSummaries().add(s);
+        }
+        if (commonPrefixes != null) {
+            ol.setCommonPrefixes(commonPrefixes);
+        }
+        return ol;
+    }
 }
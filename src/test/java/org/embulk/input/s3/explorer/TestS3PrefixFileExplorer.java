@@ -30,9 +30,20 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -119,7 +130,72 @@ public class TestS3PrefixFileExplorer
         s3PrefixFileExplorer.addToBuilder(builder);
 
         verify(builder).add(PATH_PREFIX + OBJECT_KEY, 1);
-        verify(s3PrefixFileExplorer, never()).hasNext();
+        // the next page may be requested in background while the first page is processed, but no more
+        verify(s3PrefixFileExplorer, atMost(2)).fetch();
+    }
+
+    @Test
+    public void addToBuilder_should_fetch_next_page_while_processing_current_page() throws InterruptedException
+    {
+        final CountDownLatch secondPageRequested = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        when(builder.needsMore()).thenReturn(true);
+        when(s3ObjectSummary.getStorageClass()).thenReturn(StorageClass.Standard.toString());
+        when(s3ObjectSummary.getKey()).thenReturn(PATH_PREFIX + OBJECT_KEY);
+        when(s3ObjectSummary.getSize()).thenReturn(1L);
+        doAnswer(invocation -> {
+            if (!overlapped.get()) {
+                overlapped.set(secondPageRequested.await(10, TimeUnit.SECONDS));
+            }
+            return null;
+        }).when(builder).add(PATH_PREFIX + OBJECT_KEY, 1L);
+
+        new S3PrefixFileExplorer(BUCKET_NAME, s3Client, null, PATH_PREFIX, false)
+        {
+            private int pages = 0;
+
+            @Override
+            protected List<S3ObjectSummary> fetch()
+            {
+                if (++pages == 2) {
+                    secondPageRequested.countDown();
+                }
+                return Collections.singletonList(s3ObjectSummary);
+            }
+
+            @Override
+            protected boolean hasNext()
+            {
+                return pages < 2;
+            }
+
+            @Override
+            protected S3PrefixFileExplorer newShardExplorer(final String shardPrefix)
+            {
+                throw new UnsupportedOperationException();
+            }
+        }.addToBuilder(builder);
+
+        assertTrue(overlapped.get());
+        verify(builder, times(2)).add(PATH_PREFIX + OBJECT_KEY, 1L);
+    }
+
+    @Test
+    public void groupShards_should_merge_adjacent_shards()
+    {
+        final List<S3PrefixFileExplorer.Shard> shards = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            shards.add(S3PrefixFileExplorer.Shard.ofPrefix(String.format("p%02d/", i)));
+        }
+        shards.add(5, S3PrefixFileExplorer.Shard.ofObject(new S3PrefixFileExplorer.ListedObject("p05", 1L)));
+
+        final List<List<S3PrefixFileExplorer.Shard>> groups = S3PrefixFileExplorer.groupShards(shards, 4);
+        assertEquals(4, groups.size());
+        assertEquals(Arrays.asList(3, 4, 3, 1), groups.stream().map(List::size).collect(Collectors.toList()));
+        // the order of shards is kept
+        assertEquals(shards, groups.stream().flatMap(List::stream).collect(Collectors.toList()));
+
+        assertEquals(10, S3PrefixFileExplorer.groupShards(shards, 100).size());
     }
 
     private S3PrefixFileExplorer spyS3PrefixFileExplorer(final String bucketName, final AmazonS3 s3Client, final RetryExecutor retryExecutor, final String pathPrefix, final boolean skipGlacierObjects)
@@ -137,6 +213,12 @@ public class TestS3PrefixFileExplorer
             {
                 return false;
             }
+
+            @Override
+            protected S3PrefixFileExplorer newShardExplorer(final String shardPrefix)
+            {
+                throw new UnsupportedOperationException();
+            }
         });
     }
 }
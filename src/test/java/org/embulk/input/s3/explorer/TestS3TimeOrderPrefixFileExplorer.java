@@ -17,8 +17,8 @@
 package org.embulk.input.s3.explorer;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import org.embulk.EmbulkTestRuntime;
 import org.junit.Before;
@@ -75,8 +75,8 @@ public class TestS3TimeOrderPrefixFileExplorer
         cal.set(2019, Calendar.MAY, 26, 10, 0);
         when(s3ObjectAfter.getLastModified()).thenReturn(cal.getTime());
 
-        final ObjectListing ol = mock(ObjectListing.class);
-        when(s3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(ol);
+        final ListObjectsV2Result ol = mock(ListObjectsV2Result.class);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ol);
         when(ol.getObjectSummaries()).thenReturn(Arrays.asList(s3ObjectBefore, s3ObjectAfter));
 
         final List<S3ObjectSummary> result = s3TimeOrderPrefixFileExplorer.fetch();
@@ -109,8 +109,8 @@ public class TestS3TimeOrderPrefixFileExplorer
         afterCal.set(2019, Calendar.MAY, 26, 10, 0);
         when(s3ObjectAfter.getLastModified()).thenReturn(afterCal.getTime());
 
-        final ObjectListing ol = mock(ObjectListing.class);
-        when(s3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(ol);
+        final ListObjectsV2Result ol = mock(ListObjectsV2Result.class);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ol);
         when(ol.getObjectSummaries()).thenReturn(Arrays.asList(s3ObjectEqual, s3ObjectBefore, s3ObjectAfter));
 
         final List<S3ObjectSummary> result = s3TimeOrderPrefixFileExplorer.fetch();
@@ -120,9 +120,9 @@ public class TestS3TimeOrderPrefixFileExplorer
     }
 
     @Test
-    public void hasNext_should_return_false_if_no_lastpath() throws NoSuchFieldException
+    public void hasNext_should_return_false_if_no_continuation_token() throws NoSuchFieldException
     {
-        new FieldSetter(s3TimeOrderPrefixFileExplorer, s3TimeOrderPrefixFileExplorer.getClass().getDeclaredField("lastPath")).set(null);
+        new FieldSetter(s3TimeOrderPrefixFileExplorer, s3TimeOrderPrefixFileExplorer.getClass().getDeclaredField("continuationToken")).set(null);
         assertFalse(s3TimeOrderPrefixFileExplorer.hasNext());
     }
 }
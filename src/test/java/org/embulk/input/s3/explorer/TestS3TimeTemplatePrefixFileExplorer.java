@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.s3.explorer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigException;
+import org.embulk.input.s3.FileList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestS3TimeTemplatePrefixFileExplorer
+{
+    private static final String BUCKET_NAME = "bucket_name";
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Mock
+    private AmazonS3 s3Client;
+
+    @Test
+    public void expand_should_return_prefixes_of_each_hour()
+    {
+        assertEquals(Arrays.asList("logs/2019/05/24/22/", "logs/2019/05/24/23/", "logs/2019/05/25/00/"),
+                S3TimeTemplatePrefixFileExplorer.expand("logs/%Y/%m/%d/%H/",
+                        Instant.parse("2019-05-24T22:30:00Z"), Instant.parse("2019-05-25T00:10:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void expand_should_use_time_zone_and_finest_placeholder()
+    {
+        assertEquals(Arrays.asList("dt=2019-05-25/", "dt=2019-05-26/"),
+                S3TimeTemplatePrefixFileExplorer.expand("dt=%Y-%m-%d/",
+                        Instant.parse("2019-05-24T23:30:00Z"), Instant.parse("2019-05-25T16:00:00Z"), ZoneId.of("Asia/Tokyo")));
+        assertEquals(Collections.singletonList("100%/2019/"),
+                S3TimeTemplatePrefixFileExplorer.expand("100%%/%Y/",
+                        Instant.parse("2019-05-24T00:00:00Z"), Instant.parse("2019-05-25T00:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void expand_should_reject_unsupported_placeholder()
+    {
+        S3TimeTemplatePrefixFileExplorer.expand("logs/%y/", Instant.EPOCH, Instant.EPOCH, ZoneOffset.UTC);
+    }
+
+    @Test
+    public void getPrefixes_should_return_head_of_template_without_from()
+    {
+        final S3TimeTemplatePrefixFileExplorer explorer = new S3TimeTemplatePrefixFileExplorer(BUCKET_NAME, s3Client, null,
+                "logs/%Y/%m/", false, Optional.empty(), new Date(), 4, ZoneOffset.UTC, Duration.ZERO);
+        assertEquals(Collections.singletonList("logs/"), explorer.getPrefixes());
+    }
+
+    @Test
+    public void getPrefixes_should_look_back()
+    {
+        final S3TimeTemplatePrefixFileExplorer explorer = new S3TimeTemplatePrefixFileExplorer(BUCKET_NAME, s3Client, null,
+                "logs/%H/", false, Optional.of(Date.from(Instant.parse("2019-05-25T10:05:00Z"))),
+                Date.from(Instant.parse("2019-05-25T11:00:00Z")), 4, ZoneOffset.UTC, Duration.ofMinutes(10));
+        assertEquals(Arrays.asList("logs/09/", "logs/10/", "logs/11/"), explorer.getPrefixes());
+    }
+
+    @Test
+    public void addToBuilder_should_list_expanded_prefixes_in_order()
+    {
+        final Set<String> listedPrefixes = ConcurrentHashMap.newKeySet();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            final ListObjectsV2Request req = (ListObjectsV2Request) invocation.getArguments()[0];
+            listedPrefixes.add(req.getPrefix());
+            final ListObjectsV2Result ol = new ListObjectsV2Result();
+            ol.getObjectSummaries().add(summary(req.getPrefix() + "new.gz", "2019-05-25T10:30:00Z"));
+            ol.getObjectSummaries().add(summary(req.getPrefix() + "old.gz", "2019-05-25T09:00:00Z"));
+            return ol;
+        });
+
+        for (final int listingParallelism : Arrays.asList(1, 3)) {
+            listedPrefixes.clear();
+            final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE);
+
+            new S3TimeTemplatePrefixFileExplorer(BUCKET_NAME, s3Client, null, "logs/%d/%H/", false,
+                    Optional.of(Date.from(Instant.parse("2019-05-25T10:00:00Z"))), Date.from(Instant.parse("2019-05-25T12:00:00Z")),
+                    listingParallelism, ZoneOffset.UTC, Duration.ZERO).addToBuilder(builder);
+
+            assertEquals(Arrays.asList("logs/25/10/new.gz", "logs/25/11/new.gz", "logs/25/12/new.gz"), builder.build().get(0));
+            assertEquals(3, listedPrefixes.size());
+        }
+    }
+
+    @Test
+    public void addToBuilder_should_create_partitions_only_for_prefixes_being_listed()
+    {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger listed = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            final ListObjectsV2Request req = (ListObjectsV2Request) invocation.getArguments()[0];
+            final ListObjectsV2Result ol = new ListObjectsV2Result();
+            ol.getObjectSummaries().add(summary(req.getPrefix() + "new.gz", "2019-05-25T10:30:00Z"));
+            listed.incrementAndGet();
+            return ol;
+        });
+        final FileList.Builder builder = spy(new FileList.Builder().pathMatchPattern(".*").minTaskSize(Long.MAX_VALUE));
+        doAnswer(invocation -> {
+            maxOpen.accumulateAndGet(created.incrementAndGet() - listed.get(), Math::max);
+            return invocation.callRealMethod();
+        }).when(builder).newPartition();
+
+        // 48 hourly prefixes
+        new S3TimeTemplatePrefixFileExplorer(BUCKET_NAME, s3Client, null, "logs/%d/%H/", false,
+                Optional.of(Date.from(Instant.parse("2019-05-24T00:00:00Z"))), Date.from(Instant.parse("2019-05-25T23:00:00Z")),
+                3, ZoneOffset.UTC, Duration.ZERO).addToBuilder(builder);
+
+        assertEquals(48, created.get());
+        assertTrue(maxOpen.get() <= 3);
+        assertEquals(48, builder.build().get(0).size());
+    }
+
+    private static S3ObjectSummary summary(final String key, final String lastModified)
+    {
+        final S3ObjectSummary s = new S3ObjectSummary();
+        s.setKey(key);
+        s.setSize(1L);
+        s.setStorageClass(StorageClass.Standard.toString());
+        s.setLastModified(Date.from(Instant.parse(lastModified)));
+        return s;
+    }
+}